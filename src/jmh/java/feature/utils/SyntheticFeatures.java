@@ -0,0 +1,52 @@
+package feature.utils;
+
+/**
+ * Generates features files with the bundle shapes found in real camel-features.xml files.
+ */
+final class SyntheticFeatures {
+
+    static final String[] PROPERTIES = { "grpc-version", "1.62.2", "guava-version", "33.2.0-jre", "kie-version", "8.44.0.Final" };
+
+    private static final int BUNDLES_PER_FEATURE = 20;
+
+    private SyntheticFeatures() {
+    }
+
+    static String generate(int bundles) {
+        StringBuilder sb = new StringBuilder(bundles * 120);
+        sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        sb.append("<features name=\"synthetic\" xmlns=\"http://karaf.apache.org/xmlns/features/v1.6.0\">\n");
+        for (int i = 0; i < bundles; i++) {
+            if (i % BUNDLES_PER_FEATURE == 0) {
+                if (i > 0) {
+                    sb.append("    </feature>\n");
+                }
+                sb.append("    <feature name=\"feature-").append(i / BUNDLES_PER_FEATURE).append("\" version=\"${project.version}\">\n");
+                sb.append("        <feature>camel-core</feature>\n");
+            }
+            sb.append("        ").append(bundle(i)).append('\n');
+        }
+        if (bundles > 0) {
+            sb.append("    </feature>\n");
+        }
+        sb.append("</features>\n");
+        return sb.toString();
+    }
+
+    static String bundle(int i) {
+        switch (i % 6) {
+        case 0:
+            return "<bundle dependency='true'>mvn:org.apache.camel/camel-artifact-" + i + "/${camel-version}</bundle>";
+        case 1:
+            return "<bundle dependency='true'>wrap:mvn:org.apache.olingo/odata-server-core-" + i + "/5.0.0</bundle>";
+        case 2:
+            return "<bundle dependency='true'>wrap:mvn:io.grpc/grpc-core-" + i + "/${grpc-version}$${spi-provider}</bundle>";
+        case 3:
+            return "<bundle dependency='true'>wrap:mvn:org.apache.olingo/odata-commons-" + i + "/5.0.0$overwrite=merge&amp;Export-Package=org.apache.olingo.*;version=5.0.0</bundle>";
+        case 4:
+            return "<bundle dependency='true'>wrap:mvn:org.kie/kie-api-" + i + "/${kie-version}$Bundle-Version=4.4.4</bundle>";
+        default:
+            return "<bundle dependency='true'>wrap:mvn:com.google.guava/guava-" + i + "/${guava-version}$overwrite=merge</bundle>";
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,162 @@
+package feature.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks of the wrap line rewrite hot path: a single line, all lines of a features file in memory,
+ * the whole file as processed by {@code ensure-wrap-bundle-version} and the line scan alone, which
+ * shouldn't allocate per line.
+ * <p>
+ * Only the benchmarks of a features file depend on its number of bundles. The file rewritten in place is
+ * restored before every invocation of {@link #rewriteFile}, by a state no other benchmark uses.
+ * <p>
+ * Run with {@code mvn -Pjmh verify}, the gc profiler reports the allocation rate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WrapRewriteBenchmark {
+
+    private static final byte[] WRAP = WrapUrl.WRAP.getBytes(StandardCharsets.US_ASCII);
+
+    private String[] wrapLines;
+    private WrapBundleVersionRewriter rewriter;
+    private int next;
+
+    /**
+     * A synthetic features file, in memory and on disk.
+     */
+    @State(Scope.Benchmark)
+    public static class Features {
+
+        @Param({ "1000", "10000", "100000" })
+        int bundles;
+
+        String[] lines;
+        byte[] content;
+        Path featuresFile;
+
+        @Setup
+        public void setUp() throws IOException {
+            String features = SyntheticFeatures.generate(bundles);
+            content = features.getBytes(StandardCharsets.UTF_8);
+            lines = features.split("\n");
+            featuresFile = Files.createTempFile("features-benchmark", ".xml");
+            Files.write(featuresFile, content);
+        }
+
+        @TearDown
+        public void tearDown() throws IOException {
+            Files.deleteIfExists(featuresFile);
+        }
+    }
+
+    /**
+     * A copy of the features file, restored before every rewrite.
+     */
+    @State(Scope.Benchmark)
+    public static class RewrittenFile {
+
+        Path featuresFile;
+
+        @Setup
+        public void setUp() throws IOException {
+            featuresFile = Files.createTempFile("features-benchmark-rewrite", ".xml");
+        }
+
+        @Setup(Level.Invocation)
+        public void restore(Features features) throws IOException {
+            Files.write(featuresFile, features.content);
+        }
+
+        @TearDown
+        public void tearDown() throws IOException {
+            Files.deleteIfExists(featuresFile);
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        wrapLines = new String[6];
+        for (int i = 0; i < wrapLines.length; i++) {
+            wrapLines[i] = "        " + SyntheticFeatures.bundle(i);
+        }
+
+        Properties properties = new Properties();
+        for (int i = 0; i < SyntheticFeatures.PROPERTIES.length; i += 2) {
+            properties.setProperty(SyntheticFeatures.PROPERTIES[i], SyntheticFeatures.PROPERTIES[i + 1]);
+        }
+        // the benchmarks measure the rewrite, not the logging of cleaned versions
+        SystemStreamLog quietLog = new SystemStreamLog() {
+            @Override
+            public boolean isWarnEnabled() {
+                return false;
+            }
+
+            @Override
+            public void warn(CharSequence content) {
+            }
+        };
+        rewriter = new WrapBundleVersionRewriter(quietLog, properties);
+    }
+
+    @Benchmark
+    public String rewriteLine() {
+        next = (next + 1) % wrapLines.length;
+        return rewriter.rewrite(wrapLines[next], new RewriteResult(null));
+    }
+
+    @Benchmark
+    public void rewriteLines(Features features, Blackhole blackhole) {
+        RewriteResult result = new RewriteResult(features.featuresFile);
+        for (String line : features.lines) {
+            if (line.contains(WrapUrl.WRAP_MVN)) {
+                blackhole.consume(rewriter.rewrite(line, result));
+            }
+        }
+    }
+
+    @Benchmark
+    public int scanFile(Features features) throws IOException {
+        int candidates = 0;
+        try (InputStream in = Files.newInputStream(features.featuresFile)) {
+            LineReader reader = new LineReader(in);
+            while (reader.next()) {
+                if (ByteSearch.indexOf(reader.bytes(), reader.start(), reader.start() + reader.contentLength(), WRAP) >= 0) {
+                    candidates++;
+                }
+            }
+        }
+        return candidates;
+    }
+
+    @Benchmark
+    public RewriteResult rewriteFile(RewrittenFile file) throws IOException {
+        return new FeaturesFileRewriter(rewriter).rewrite(file.featuresFile, null);
+    }
+}
\ No newline at end of file
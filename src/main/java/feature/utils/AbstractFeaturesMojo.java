@@ -0,0 +1,469 @@
+package feature.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import feature.utils.ArtifactResolutionStage.FailurePolicy;
+
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecution;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.descriptor.PluginDescriptor;
+import org.apache.maven.plugins.annotations.Component;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.DirectoryScanner;
+import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.repository.RemoteRepository;
+
+/**
+ * Parameters shared by the goals scanning the wrap bundles of features files: which files and features
+ * to process, how many threads to use and how to resolve the wrapped artifacts.
+ */
+abstract class AbstractFeaturesMojo extends AbstractMojo {
+
+    @Parameter(property = "featuresFilePath", required = false)
+    private String featuresFilePath;
+
+    /**
+     * Additional features files to process.
+     */
+    @Parameter(required = false)
+    private List<String> featuresFiles;
+
+    /**
+     * Base directory of the {@code includes}/{@code excludes} globs.
+     */
+    @Parameter(defaultValue = "${project.basedir}", required = false)
+    private File featuresDirectory;
+
+    /**
+     * Globs selecting features files under {@code featuresDirectory}, e.g. {@code src/main/feature/**}{@code /*.xml}.
+     */
+    @Parameter(required = false)
+    private String[] includes;
+
+    @Parameter(required = false)
+    private String[] excludes;
+
+    /**
+     * Number of features files processed concurrently, defaults to the number of available processors.
+     */
+    @Parameter(property = "featuresUtils.threads", required = false)
+    private Integer threads;
+
+    /**
+     * Use virtual threads to process the features files when running on JDK 21+.
+     */
+    @Parameter(property = "featuresUtils.virtualThreads", defaultValue = "true", required = false)
+    private boolean virtualThreads;
+
+    /**
+     * Name of the feature to process, several names or {@code *}/{@code ?} patterns can be given comma separated.
+     */
+    @Parameter(property = "targetFeature", required = false)
+    private String targetFeature = null;
+
+    /**
+     * Names or {@code *}/{@code ?} patterns of the features to process, in addition to {@code targetFeature}.
+     */
+    @Parameter(required = false)
+    private List<String> targetFeatures;
+
+    /**
+     * Resolve the wrapped artifacts and leave the ones that already are OSGi bundles alone. Unless it reports all the
+     * violations, {@code verify-wrap-bundle-version} only resolves the artifacts of the lines it checks, one at a time.
+     */
+    @Parameter(property = "featuresUtils.resolveManifests", defaultValue = "false", required = false)
+    protected boolean resolveManifests;
+
+    /**
+     * Manifest headers of the inspected jars, kept across builds.
+     */
+    @Parameter(defaultValue = "${settings.localRepository}/.cache/feature-utils/manifest-cache.properties", required = false)
+    private File manifestCacheFile;
+
+    /**
+     * Number of wrapped artifacts resolved concurrently.
+     */
+    @Parameter(property = "featuresUtils.resolutionThreads", defaultValue = "8", required = false)
+    private int resolutionThreads;
+
+    /**
+     * Time in seconds allowed to resolve a single wrapped artifact and read its manifest.
+     */
+    @Parameter(property = "featuresUtils.resolutionTimeout", defaultValue = "60", required = false)
+    private long resolutionTimeout;
+
+    /**
+     * What to do when the manifest of a wrapped artifact can't be read: {@code WARN} processes it as a
+     * non-OSGi artifact, {@code SKIP} leaves its lines untouched, {@code FAIL} fails the build.
+     */
+    @Parameter(property = "featuresUtils.resolutionFailurePolicy", defaultValue = "WARN", required = false)
+    protected FailurePolicy resolutionFailurePolicy;
+
+    /**
+     * Keep the placeholder of the version, e.g. {@code Bundle-Version=${grpc-version}}, rather than writing its value
+     * in the {@code Bundle-Version} header. Versions that have to be cleaned are always written as values.
+     */
+    @Parameter(property = "featuresUtils.preservePlaceholders", defaultValue = "true", required = false)
+    protected boolean preservePlaceholders;
+
+    /**
+     * Edits of the wrap instructions applied after the {@code Bundle-Version} header is set, see {@link WrapRule}.
+     */
+    @Parameter(required = false)
+    private List<WrapRule> wrapRules;
+
+    /**
+     * Rules repairing the versions that aren't valid OSGi versions, see {@link VersionRepair}.
+     */
+    @Parameter(required = false)
+    private List<VersionRepair> versionRepairs;
+
+    /**
+     * Strategies repairing a version that isn't a valid OSGi version, tried in order: {@code rules} (the
+     * {@code versionRepairs}), {@code manifest} (the version of the jar manifest, needs {@code resolveManifests})
+     * and {@code clean} (the clean function of Felix).
+     */
+    @Parameter(property = "featuresUtils.versionRepairStrategies", defaultValue = "rules,clean", required = false)
+    private List<String> versionRepairStrategies;
+
+    /**
+     * Directory of the JSON/CSV metrics report of the execution, no report is written if empty.
+     */
+    @Parameter(property = "featuresUtils.reportDirectory", defaultValue = "${project.build.directory}/feature-utils", required = false)
+    private File reportDirectory;
+
+    @Parameter(defaultValue = "${project}", readonly = true, required = true)
+    protected MavenProject project;
+
+    @Parameter(defaultValue = "${session}", readonly = true, required = true)
+    private MavenSession session;
+
+    @Parameter(defaultValue = "${mojoExecution}", readonly = true, required = true)
+    private MojoExecution mojoExecution;
+
+    @Parameter(defaultValue = "${repositorySystemSession}", readonly = true, required = true)
+    private RepositorySystemSession repositorySession;
+
+    @Parameter(defaultValue = "${project.remoteProjectRepositories}", readonly = true, required = true)
+    private List<RemoteRepository> remoteRepositories;
+
+    @Component
+    private RepositorySystem repositorySystem;
+
+    private SessionCache sessionCache;
+
+    /**
+     * @return the caches shared by all the executions of the build
+     */
+    protected SessionCache getSessionCache() {
+        if (sessionCache == null) {
+            sessionCache = SessionCache.of(repositorySession);
+        }
+        return sessionCache;
+    }
+
+    /**
+     * @return the interpolated properties of the project, logging the ones that can't be resolved
+     */
+    protected PropertyResolver newPropertyResolver() {
+        return newPropertyResolver(Collections.emptyMap());
+    }
+
+    /**
+     * @param overrides properties taking precedence over the ones of the project
+     * @return the interpolated properties of the project, logging the ones that can't be resolved
+     */
+    protected PropertyResolver newPropertyResolver(Map<String, String> overrides) {
+        PropertyResolver propertyResolver = PropertyResolver.of(project, session, getSessionCache(), overrides);
+        if (getLog().isDebugEnabled()) {
+            for (Map.Entry<String, String> problem : propertyResolver.problems().entrySet()) {
+                getLog().debug(String.format("Property %s can't be resolved: %s", problem.getKey(), problem.getValue()));
+            }
+        }
+        return propertyResolver;
+    }
+
+    /**
+     * @return the configured wrap rules, in order
+     */
+    protected List<WrapRule> getWrapRules() throws MojoExecutionException {
+        if (wrapRules == null) {
+            return Collections.emptyList();
+        }
+        for (WrapRule rule : wrapRules) {
+            String problem = rule.validate();
+            if (problem != null) {
+                throw new MojoExecutionException(String.format("Invalid wrap rule %s: %s", rule, problem));
+            }
+            rule.compile(getSessionCache()::pattern);
+        }
+        return wrapRules;
+    }
+
+    /**
+     * @param selectedFeatures the features processed, {@code null} for all of them
+     * @return the parameters the rewritten content depends on and the version of the plugin, for the incremental mode
+     */
+    protected String getRewriteConfiguration(List<String> selectedFeatures) {
+        PluginDescriptor plugin = mojoExecution == null ? null : mojoExecution.getMojoDescriptor().getPluginDescriptor();
+        return IncrementalState.configuration(plugin == null ? null : plugin.getVersion(), selectedFeatures, preservePlaceholders,
+                resolveManifests, resolutionFailurePolicy, versionRepairStrategies, versionRepairs, wrapRules);
+    }
+
+    /**
+     * @return the configured version repair strategies, with their rules compiled
+     */
+    protected VersionRepairs getVersionRepairs() throws MojoExecutionException {
+        List<VersionRepairs.Strategy> strategies;
+        try {
+            strategies = VersionRepairs.strategies(versionRepairStrategies != null ? versionRepairStrategies : Collections.singletonList("rules,clean"));
+        } catch (IllegalArgumentException e) {
+            throw new MojoExecutionException(e.getMessage(), e);
+        }
+        List<VersionRepair> rules = versionRepairs != null ? versionRepairs : Collections.emptyList();
+        for (VersionRepair rule : rules) {
+            String problem = rule.validate();
+            if (problem != null) {
+                throw new MojoExecutionException(String.format("Invalid version repair %s: %s", rule, problem));
+            }
+        }
+        if (strategies.contains(VersionRepairs.Strategy.MANIFEST) && !resolveManifests) {
+            getLog().warn("The manifest version repair strategy needs resolveManifests, it is ignored");
+        }
+        return new VersionRepairs(strategies, rules);
+    }
+
+    /**
+     * @return a pool sized for the given number of features files
+     */
+    protected ExecutorService newExecutor(String name, int files) {
+        int poolSize = Math.min(files, threads != null ? threads : Runtime.getRuntime().availableProcessors());
+        return BoundedExecutors.newExecutor(name, Math.max(1, poolSize), virtualThreads);
+    }
+
+    /**
+     * Collects the unique artifacts wrapped by the selected features of all files and reads their manifest concurrently.
+     */
+    protected Map<ArtifactKey, ManifestInfo> resolveWrappedArtifacts(List<Path> files, List<String> selectedFeatures,
+            PropertyResolver propertyResolver, ExecutorService executor) throws MojoExecutionException, InterruptedException {
+        FeaturesFileRewriter collector = new FeaturesFileRewriter(
+                new WrapBundleVersionRewriter(getLog(), propertyResolver, null, null, null, resolutionFailurePolicy, preservePlaceholders, Collections.emptyList()),
+                getSessionCache());
+        Set<ArtifactKey> artifacts = ConcurrentHashMap.newKeySet();
+        List<Future<?>> collected = new ArrayList<>();
+        for (Path file : files) {
+            collected.add(executor.submit(() -> {
+                collector.collectArtifacts(file, selectedFeatures, artifacts);
+                return null;
+            }));
+        }
+        for (Future<?> future : collected) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                // the file is reported by the rewrite pass
+                getLog().debug(e.getCause());
+            }
+        }
+        return resolveManifests(artifacts);
+    }
+
+    /**
+     * Reads the manifest of the given artifacts concurrently, the ones already inspected by the build are taken from its cache.
+     */
+    protected Map<ArtifactKey, ManifestInfo> resolveManifests(Set<ArtifactKey> artifacts) throws MojoExecutionException, InterruptedException {
+        ManifestCache manifestCache = getManifestCache();
+
+        // artifacts already inspected by another module of the build
+        SessionCache.Memo<ArtifactKey, ManifestInfo> inspected = getSessionCache().manifests();
+        Map<ArtifactKey, ManifestInfo> manifests = new HashMap<>();
+        for (Iterator<ArtifactKey> it = artifacts.iterator(); it.hasNext();) {
+            ArtifactKey artifact = it.next();
+            ManifestInfo manifest = inspected.peek(artifact);
+            if (manifest != null) {
+                manifests.put(artifact, manifest);
+                it.remove();
+            }
+        }
+
+        Map<ArtifactKey, ManifestInfo> resolved = newResolutionStage(manifestCache).resolve(artifacts);
+        int failed = 0;
+        for (Map.Entry<ArtifactKey, ManifestInfo> entry : resolved.entrySet()) {
+            if (entry.getValue() != null) {
+                inspected.put(entry.getKey(), entry.getValue());
+            } else {
+                failed++;
+            }
+        }
+        manifests.putAll(resolved);
+        getLog().info(String.format("Inspected the manifest of %d wrapped artifacts, %d failed", resolved.size(), failed));
+
+        saveManifestCache(manifestCache);
+        return manifests;
+    }
+
+    /**
+     * Manifests read on demand, for a scan that may stop long before its last line: only the artifacts of the lines
+     * actually checked are resolved, each once and through the caches of the build. The failure policy applies to every
+     * artifact as it is resolved.
+     *
+     * @return the lookup of the manifests, to pass to {@link #closeLazyManifests} once the scan is done
+     */
+    protected ArtifactResolutionStage.OnDemand lazyManifests() throws MojoExecutionException {
+        return newResolutionStage(getManifestCache()).onDemand(getSessionCache().manifests());
+    }
+
+    /**
+     * Stops the workers of the lookup and writes the manifests it read to the cache kept across builds.
+     */
+    protected void closeLazyManifests(ArtifactResolutionStage.OnDemand manifests) throws MojoExecutionException {
+        manifests.close();
+        getLog().info(String.format("Inspected the manifest of %d wrapped artifacts, %d failed", manifests.resolved(), manifests.failed()));
+        saveManifestCache(getManifestCache());
+    }
+
+    private ManifestCache getManifestCache() throws MojoExecutionException {
+        try {
+            return getSessionCache().manifestCache(manifestCacheFile.toPath());
+        } catch (IOException e) {
+            throw new MojoExecutionException(String.format("Unable to read manifest cache %s", manifestCacheFile), e);
+        }
+    }
+
+    private void saveManifestCache(ManifestCache manifestCache) {
+        try {
+            manifestCache.save();
+        } catch (IOException e) {
+            getLog().warn(String.format("Unable to write manifest cache %s: %s", manifestCacheFile, e.getMessage()));
+        }
+    }
+
+    private ArtifactResolutionStage newResolutionStage(ManifestCache manifestCache) {
+        ArtifactManifestResolver resolver = new ArtifactManifestResolver(repositorySystem, repositorySession, remoteRepositories, manifestCache);
+        return new ArtifactResolutionStage(resolver, resolutionThreads, TimeUnit.SECONDS.toMillis(resolutionTimeout), resolutionFailurePolicy, getLog());
+    }
+
+    /**
+     * Logs the summary of the execution and writes its report. The statistics of the build caches are logged with the
+     * last project of the reactor running the plugin, at debug level with the other ones.
+     */
+    protected void writeReport(ExecutionReport report) {
+        report.finish();
+        getLog().info(report.summary());
+        if (isLastUsingProject()) {
+            getLog().info(getSessionCache().summary());
+        } else if (getLog().isDebugEnabled()) {
+            getLog().debug(getSessionCache().summary());
+        }
+        if (reportDirectory != null) {
+            try {
+                report.write(reportDirectory.toPath(), mojoExecution == null ? null : mojoExecution.getExecutionId());
+            } catch (IOException e) {
+                getLog().warn(String.format("Unable to write report to %s: %s", reportDirectory, e.getMessage()));
+            }
+        }
+    }
+
+    /**
+     * @return {@code true} if no project of the reactor built after this one runs the plugin, whose build caches then
+     *         hold the statistics of the whole build
+     */
+    private boolean isLastUsingProject() {
+        List<MavenProject> projects = session == null ? null : session.getProjects();
+        if (projects == null || mojoExecution == null) {
+            return false;
+        }
+        String pluginKey = mojoExecution.getMojoDescriptor().getPluginDescriptor().getPluginLookupKey();
+        // a goal invoked from the command line runs on every project
+        boolean declared = usesPlugin(project, pluginKey);
+        for (int i = projects.indexOf(project) + 1; i < projects.size(); i++) {
+            if (!declared || usesPlugin(projects.get(i), pluginKey)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean usesPlugin(MavenProject project, String pluginKey) {
+        for (Plugin plugin : project.getBuildPlugins()) {
+            if (pluginKey.equals(plugin.getKey())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    protected List<String> getSelectedFeatures() {
+        if (targetFeature == null && (targetFeatures == null || targetFeatures.isEmpty())) {
+            return null;
+        }
+        Set<String> selectedFeatures = new LinkedHashSet<>();
+        if (targetFeature != null) {
+            for (String feature : targetFeature.split(",")) {
+                if (!feature.trim().isEmpty()) {
+                    selectedFeatures.add(feature.trim());
+                }
+            }
+        }
+        if (targetFeatures != null) {
+            selectedFeatures.addAll(targetFeatures);
+        }
+        return new ArrayList<>(selectedFeatures);
+    }
+
+    protected List<Path> collectFeaturesFiles() {
+        Set<Path> files = new LinkedHashSet<>();
+        if (featuresFilePath != null) {
+            files.add(resolve(featuresFilePath));
+        }
+        if (featuresFiles != null) {
+            for (String featuresFile : featuresFiles) {
+                files.add(resolve(featuresFile));
+            }
+        }
+        if (includes != null && includes.length > 0 && featuresDirectory != null && featuresDirectory.isDirectory()) {
+            DirectoryScanner scanner = new DirectoryScanner();
+            scanner.setBasedir(featuresDirectory);
+            scanner.setIncludes(includes);
+            scanner.setExcludes(excludes);
+            scanner.scan();
+            for (String includedFile : scanner.getIncludedFiles()) {
+                files.add(featuresDirectory.toPath().resolve(includedFile).toAbsolutePath().normalize());
+            }
+        }
+        return new ArrayList<>(files);
+    }
+
+    /**
+     * @return the absolute path of the configured file, a relative one being resolved against the directory of the module
+     *         rather than the working directory of the build
+     */
+    private Path resolve(String featuresFile) {
+        Path path = Paths.get(featuresFile);
+        if (!path.isAbsolute() && project != null && project.getBasedir() != null) {
+            path = project.getBasedir().toPath().resolve(path);
+        }
+        return path.toAbsolutePath().normalize();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,198 @@
+package feature.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * Indexes the artifacts wrapped by the features files and reports the ones wrapped in several versions (version
+ * skew), wrapped with different {@code Bundle-Version} headers for the same version (conflicts) or wrapped more than
+ * once by the same feature (duplicates).
+ * <p>
+ * With {@code normalize}, the features files are then rewritten once: skewed artifacts are aligned on their highest
+ * version and every wrap bundle gets the {@code Bundle-Version} header {@code ensure-wrap-bundle-version} would set,
+ * without inspecting the manifests. Duplicates are only reported.
+ */
+@Mojo(name = "analyze-wrap-bundles", defaultPhase = LifecyclePhase.VALIDATE)
+public class AnalyzeWrapBundlesMojo extends AbstractFeaturesMojo {
+
+    /**
+     * Rewrite the features files to fix the version skew and the conflicting headers.
+     */
+    @Parameter(property = "featuresUtils.normalize", defaultValue = "false", required = false)
+    private boolean normalize;
+
+    /**
+     * Fail the build when an issue is found, or is left after normalization.
+     */
+    @Parameter(property = "featuresUtils.failOnConflicts", defaultValue = "false", required = false)
+    private boolean failOnConflicts;
+
+    /**
+     * JSON file listing the artifacts with issues, none is written if empty.
+     */
+    @Parameter(property = "featuresUtils.analysisFile", defaultValue = "${project.build.directory}/feature-utils/wrap-artifacts.json", required = false)
+    private File analysisFile;
+
+    @Override
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        List<Path> files = collectFeaturesFiles();
+        if (files.isEmpty()) {
+            getLog().warn("No features file to analyze, configure featuresFilePath, featuresFiles or includes");
+            return;
+        }
+
+        List<String> selectedFeatures = getSelectedFeatures();
+        PropertyResolver propertyResolver = newPropertyResolver();
+        WrapBundleVersionRewriter rewriter = new WrapBundleVersionRewriter(getLog(), propertyResolver,
+                getSessionCache().versionNormalizer(), getVersionRepairs(), null, resolutionFailurePolicy, preservePlaceholders, getWrapRules());
+        FeaturesFileRewriter fileRewriter = new FeaturesFileRewriter(rewriter, getSessionCache());
+        WrapArtifactIndex index = new WrapArtifactIndex(propertyResolver);
+
+        ExecutorService executor = newExecutor("features-utils-analyze", files.size());
+        try {
+            // every file is indexed on its own, the indexes are merged in the order of the files
+            Map<Path, Future<WrapArtifactIndex>> scans = new LinkedHashMap<>();
+            for (Path file : files) {
+                scans.put(file, executor.submit(() -> {
+                    WrapArtifactIndex fileIndex = new WrapArtifactIndex(propertyResolver);
+                    // the features are named after their file when several files are analyzed
+                    Map<String, String> labels = new HashMap<>();
+                    fileRewriter.scanWrapLines(file, selectedFeatures, (feature, line) -> fileIndex.add(files.size() == 1 ? feature
+                            : labels.computeIfAbsent(feature, name -> file.getFileName() + ":" + name), line));
+                    return fileIndex;
+                }));
+            }
+            for (Map.Entry<Path, Future<WrapArtifactIndex>> scan : scans.entrySet()) {
+                try {
+                    index.merge(scan.getValue().get());
+                } catch (ExecutionException e) {
+                    throw new MojoExecutionException(String.format("Unable to analyze features file %s: %s", scan.getKey(), e.getCause().getMessage()), e.getCause());
+                }
+            }
+
+            int issues = report(index, files.size());
+            writeAnalysis(index);
+            if (normalize && issues > 0) {
+                rewriter.alignVersions(index.alignedVersions());
+                issues = normalize(files, selectedFeatures, fileRewriter, index, executor);
+            }
+            if (failOnConflicts && issues > 0) {
+                throw new MojoFailureException(String.format("%d wrapped artifact(s) with issues, see %s", issues, analysisFile));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Interrupted while analyzing features files", e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @return the number of artifacts with issues
+     */
+    private int report(WrapArtifactIndex index, int files) {
+        int skewed = 0;
+        int conflicting = 0;
+        int duplicated = 0;
+        int issues = 0;
+        for (WrapArtifactIndex.Artifact artifact : index.artifacts()) {
+            boolean issue = false;
+            if (artifact.isSkewed()) {
+                skewed++;
+                issue = true;
+                getLog().warn(String.format("Version skew of %s: %s, %s is the highest", artifact.key, artifact.versions, artifact.highestVersion()));
+            }
+            List<String> conflicts = artifact.conflicts();
+            if (!conflicts.isEmpty()) {
+                conflicting++;
+                issue = true;
+                for (String version : conflicts) {
+                    getLog().warn(String.format("Conflicting Bundle-Version headers of %s:%s: %s", artifact.key, version, artifact.bundleVersions.get(version)));
+                }
+            }
+            if (!artifact.duplicates.isEmpty()) {
+                duplicated++;
+                issue = true;
+                getLog().warn(String.format("%s is wrapped more than once by %s", artifact.key, artifact.duplicates));
+            }
+            if (issue) {
+                issues++;
+            }
+        }
+        getLog().info(String.format("Analyzed %d wrap bundles of %d artifacts in %d features files: %d with version skew, "
+                + "%d with conflicting Bundle-Version headers, %d wrapped more than once by a feature",
+                index.wrapBundles(), index.artifacts().size(), files, skewed, conflicting, duplicated));
+        return issues;
+    }
+
+    /**
+     * @return the number of artifacts with issues left, the duplicated ones
+     */
+    private int normalize(List<Path> files, List<String> selectedFeatures, FeaturesFileRewriter fileRewriter, WrapArtifactIndex index,
+            ExecutorService executor) throws MojoExecutionException, InterruptedException {
+        ExecutionReport report = new ExecutionReport("analyze-wrap-bundles", project.getId());
+        Map<Path, Future<RewriteResult>> futures = new LinkedHashMap<>();
+        for (Path file : files) {
+            futures.put(file, executor.submit(() -> fileRewriter.rewrite(file, selectedFeatures)));
+        }
+        long versionsAligned = 0;
+        for (Map.Entry<Path, Future<RewriteResult>> entry : futures.entrySet()) {
+            try {
+                RewriteResult result = entry.getValue().get();
+                report.add(result);
+                versionsAligned += result.versionsAligned;
+                if (result.written) {
+                    getLog().info(String.format("File %s normalized successfully.", entry.getKey()));
+                }
+            } catch (ExecutionException e) {
+                report.addFailure(entry.getKey());
+                getLog().error(String.format("Unable to normalize features file %s: %s", entry.getKey(), e.getCause().getMessage()));
+                getLog().debug(e.getCause());
+            }
+        }
+        getLog().info(String.format("Aligned %d wrapped artifact versions", versionsAligned));
+        writeReport(report);
+        if (!report.failures().isEmpty()) {
+            throw new MojoExecutionException(String.format("Unable to normalize features files %s", report.failures()));
+        }
+
+        int duplicated = 0;
+        for (WrapArtifactIndex.Artifact artifact : index.artifacts()) {
+            if (!artifact.duplicates.isEmpty()) {
+                duplicated++;
+            }
+        }
+        return duplicated;
+    }
+
+    private void writeAnalysis(WrapArtifactIndex index) {
+        if (analysisFile == null) {
+            return;
+        }
+        try {
+            Files.createDirectories(analysisFile.toPath().toAbsolutePath().getParent());
+            try (Writer out = Files.newBufferedWriter(analysisFile.toPath(), StandardCharsets.UTF_8)) {
+                index.writeJson(out);
+            }
+        } catch (IOException e) {
+            getLog().warn(String.format("Unable to write analysis %s: %s", analysisFile, e.getMessage()));
+        }
+    }
+}
\ No newline at end of file
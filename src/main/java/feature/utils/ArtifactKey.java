@@ -0,0 +1,57 @@
+package feature.utils;
+
+import java.util.Objects;
+
+/**
+ * Maven coordinates of a wrapped artifact, with its version resolved.
+ */
+final class ArtifactKey {
+
+    final String groupId;
+    final String artifactId;
+    final String type;
+    final String classifier;
+    final String version;
+
+    ArtifactKey(String groupId, String artifactId, String type, String classifier, String version) {
+        this.groupId = groupId;
+        this.artifactId = artifactId;
+        this.type = type;
+        this.classifier = classifier;
+        this.version = version;
+    }
+
+    static ArtifactKey of(WrapUrl url, String resolvedVersion) {
+        return new ArtifactKey(url.groupId(), url.artifactId(), url.type(), url.classifier(), resolvedVersion);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ArtifactKey)) {
+            return false;
+        }
+        ArtifactKey other = (ArtifactKey) o;
+        return groupId.equals(other.groupId) && artifactId.equals(other.artifactId) && version.equals(other.version)
+                && Objects.equals(type, other.type) && Objects.equals(classifier, other.classifier);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(groupId, artifactId, type, classifier, version);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(groupId).append(':').append(artifactId);
+        if (type != null) {
+            sb.append(':').append(type);
+            if (classifier != null) {
+                sb.append(':').append(classifier);
+            }
+        }
+        return sb.append(':').append(version).toString();
+    }
+}
\ No newline at end of file
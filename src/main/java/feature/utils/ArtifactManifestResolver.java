@@ -0,0 +1,77 @@
+package feature.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.resolution.ArtifactRequest;
+import org.eclipse.aether.resolution.ArtifactResolutionException;
+
+/**
+ * Resolves wrapped artifacts through the maven repositories and reads the OSGi headers of their manifest.
+ * <p>
+ * Only the central directory of the jar and the MANIFEST.MF entry are read, the jar is never extracted.
+ */
+class ArtifactManifestResolver {
+
+    private final RepositorySystem repositorySystem;
+    private final RepositorySystemSession repositorySession;
+    private final List<RemoteRepository> remoteRepositories;
+    private final ManifestCache cache;
+
+    ArtifactManifestResolver(RepositorySystem repositorySystem, RepositorySystemSession repositorySession,
+            List<RemoteRepository> remoteRepositories, ManifestCache cache) {
+        this.repositorySystem = repositorySystem;
+        this.repositorySession = repositorySession;
+        this.remoteRepositories = remoteRepositories;
+        this.cache = cache;
+    }
+
+    /**
+     * @param extension type of the artifact, {@code jar} if {@code null}
+     * @param classifier classifier of the artifact, may be {@code null}
+     */
+    ManifestInfo resolve(String groupId, String artifactId, String extension, String classifier, String version)
+            throws ArtifactResolutionException, IOException {
+        DefaultArtifact artifact = new DefaultArtifact(groupId, artifactId, classifier, extension == null ? "jar" : extension, version);
+        Path jar = repositorySystem.resolveArtifact(repositorySession, new ArtifactRequest(artifact, remoteRepositories, null))
+                .getArtifact().getFile().toPath();
+
+        String checksum = cache.checksum(jar);
+        ManifestInfo manifest = cache.get(checksum);
+        if (manifest == null) {
+            manifest = readManifest(jar);
+            cache.put(checksum, manifest);
+        }
+        return manifest;
+    }
+
+    static ManifestInfo readManifest(Path jar) throws IOException {
+        try (ZipFile zipFile = new ZipFile(jar.toFile())) {
+            ZipEntry entry = zipFile.getEntry(JarFile.MANIFEST_NAME);
+            if (entry == null) {
+                return ManifestInfo.NO_MANIFEST;
+            }
+            try (InputStream in = zipFile.getInputStream(entry)) {
+                Attributes attributes = new Manifest(in).getMainAttributes();
+                String symbolicName = attributes.getValue("Bundle-SymbolicName");
+                if (symbolicName != null) {
+                    // strip directives like ;singleton:=true
+                    int directives = symbolicName.indexOf(';');
+                    symbolicName = (directives < 0 ? symbolicName : symbolicName.substring(0, directives)).trim();
+                }
+                return new ManifestInfo(symbolicName, attributes.getValue("Bundle-Version"), attributes.getValue("Implementation-Version"));
+            }
+        }
+    }
+}
\ No newline at end of file
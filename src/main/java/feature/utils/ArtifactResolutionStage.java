@@ -0,0 +1,252 @@
+package feature.utils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Resolves the unique wrapped artifacts of all selected features files concurrently, before the rewrite pass.
+ * <p>
+ * Every artifact gets its own timeout, counted from the moment its resolution actually starts so that
+ * artifacts waiting for a free worker aren't penalized. The artifacts can also be resolved {@link #onDemand on demand}.
+ */
+class ArtifactResolutionStage {
+
+    /**
+     * What to do with a wrapped artifact whose manifest can't be read.
+     */
+    enum FailurePolicy {
+        /** log a warning and process the line as a non-OSGi artifact */
+        WARN,
+        /** log a warning and leave the line untouched */
+        SKIP,
+        /** fail the build */
+        FAIL
+    }
+
+    private static final long NOT_STARTED = -1;
+    private static final long POLL_MILLIS = 50;
+
+    private final ArtifactManifestResolver resolver;
+    private final int parallelism;
+    private final long timeoutMillis;
+    private final FailurePolicy failurePolicy;
+    private final Log log;
+
+    ArtifactResolutionStage(ArtifactManifestResolver resolver, int parallelism, long timeoutMillis, FailurePolicy failurePolicy, Log log) {
+        this.resolver = resolver;
+        this.parallelism = parallelism;
+        this.timeoutMillis = timeoutMillis;
+        this.failurePolicy = failurePolicy;
+        this.log = log;
+    }
+
+    /**
+     * @return the manifest of every artifact, mapped to {@code null} for the artifacts that couldn't be inspected
+     */
+    Map<ArtifactKey, ManifestInfo> resolve(Collection<ArtifactKey> artifacts) throws MojoExecutionException {
+        Map<ArtifactKey, ManifestInfo> manifests = new HashMap<>();
+        if (artifacts.isEmpty()) {
+            return manifests;
+        }
+
+        List<ArtifactKey> keys = new ArrayList<>(artifacts);
+        List<Future<ManifestInfo>> futures = new ArrayList<>(keys.size());
+        AtomicLong[] startedAt = new AtomicLong[keys.size()];
+        List<String> failures = new ArrayList<>();
+
+        ExecutorService executor = BoundedExecutors.newExecutor("features-utils-resolver", Math.min(parallelism, keys.size()), false);
+        try {
+            for (int i = 0; i < keys.size(); i++) {
+                ArtifactKey key = keys.get(i);
+                AtomicLong started = new AtomicLong(NOT_STARTED);
+                startedAt[i] = started;
+                futures.add(executor.submit(() -> {
+                    started.set(System.nanoTime());
+                    return resolver.resolve(key.groupId, key.artifactId, key.type, key.classifier, key.version);
+                }));
+            }
+
+            for (int i = 0; i < keys.size(); i++) {
+                ArtifactKey key = keys.get(i);
+                try {
+                    manifests.put(key, await(futures.get(i), startedAt[i]));
+                } catch (ExecutionException e) {
+                    failures.add(String.format("%s: %s", key, e.getCause().getMessage()));
+                    manifests.put(key, null);
+                } catch (TimeoutException e) {
+                    futures.get(i).cancel(true);
+                    failures.add(String.format("%s: not resolved within %d ms", key, timeoutMillis));
+                    manifests.put(key, null);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Interrupted while resolving wrapped artifacts", e);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        report(failures);
+        return manifests;
+    }
+
+    /**
+     * @param inspected the manifests already read by the build, the ones read on demand are added to it
+     * @return a lookup resolving the artifacts one at a time as they are looked up, to close once the lookups are done
+     */
+    OnDemand onDemand(SessionCache.Memo<ArtifactKey, ManifestInfo> inspected) {
+        return new OnDemand(inspected);
+    }
+
+    private void report(List<String> failures) throws MojoExecutionException {
+        if (!failures.isEmpty()) {
+            if (failurePolicy == FailurePolicy.FAIL) {
+                throw new MojoExecutionException(String.format("Unable to read the manifest of %d wrapped artifacts: %s", failures.size(), failures));
+            }
+            String consequence = failurePolicy == FailurePolicy.SKIP ? "its lines are left untouched" : "its lines are processed as non-OSGi artifacts";
+            for (String failure : failures) {
+                log.warn(String.format("Unable to read the manifest of %s, %s", failure, consequence));
+            }
+        }
+    }
+
+    /**
+     * Manifests resolved on demand, for a scan that may stop long before its last line. Every artifact is resolved once
+     * by the workers of the lookup, the threads looking it up wait for it with the timeout of the stage.
+     * <p>
+     * With the {@code FAIL} policy, the lookup of an artifact that couldn't be inspected throws an {@link IllegalStateException}.
+     */
+    final class OnDemand implements Function<ArtifactKey, ManifestInfo>, AutoCloseable {
+
+        private final SessionCache.Memo<ArtifactKey, ManifestInfo> inspected;
+        private final ExecutorService executor = BoundedExecutors.newExecutor("features-utils-resolver", parallelism, false);
+        private final Map<ArtifactKey, Lookup> lookups = new ConcurrentHashMap<>();
+        private final AtomicInteger failed = new AtomicInteger();
+
+        private OnDemand(SessionCache.Memo<ArtifactKey, ManifestInfo> inspected) {
+            this.inspected = inspected;
+        }
+
+        /**
+         * @return the manifest of the artifact, {@code null} if it couldn't be inspected
+         */
+        @Override
+        public ManifestInfo apply(ArtifactKey key) {
+            ManifestInfo manifest = inspected.peek(key);
+            if (manifest != null) {
+                return manifest;
+            }
+            Lookup lookup = lookups.get(key);
+            if (lookup == null) {
+                Lookup newLookup = new Lookup(key);
+                lookup = lookups.putIfAbsent(key, newLookup);
+                if (lookup == null) {
+                    lookup = newLookup;
+                    executor.execute(newLookup.task);
+                }
+            }
+            return lookup.await();
+        }
+
+        /**
+         * @return the number of artifacts resolved by the lookup
+         */
+        int resolved() {
+            return lookups.size();
+        }
+
+        int failed() {
+            return failed.get();
+        }
+
+        @Override
+        public void close() {
+            executor.shutdownNow();
+        }
+
+        /**
+         * Resolution of a single artifact, the first thread waiting for it applies the failure policy.
+         */
+        private final class Lookup {
+            final ArtifactKey key;
+            final AtomicLong started = new AtomicLong(NOT_STARTED);
+            final FutureTask<ManifestInfo> task;
+            private boolean done;
+            private ManifestInfo manifest;
+            private String failure;
+
+            Lookup(ArtifactKey key) {
+                this.key = key;
+                this.task = new FutureTask<>(() -> {
+                    started.set(System.nanoTime());
+                    return resolver.resolve(key.groupId, key.artifactId, key.type, key.classifier, key.version);
+                });
+            }
+
+            synchronized ManifestInfo await() {
+                if (!done) {
+                    try {
+                        manifest = ArtifactResolutionStage.this.await(task, started);
+                        if (manifest != null) {
+                            inspected.put(key, manifest);
+                        }
+                    } catch (ExecutionException e) {
+                        failure = String.format("%s: %s", key, e.getCause().getMessage());
+                    } catch (TimeoutException e) {
+                        task.cancel(true);
+                        failure = String.format("%s: not resolved within %d ms", key, timeoutMillis);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IllegalStateException("Interrupted while resolving wrapped artifact " + key, e);
+                    }
+                    done = true;
+                    if (failure != null) {
+                        failed.incrementAndGet();
+                        try {
+                            report(Collections.singletonList(failure));
+                        } catch (MojoExecutionException e) {
+                            failure = e.getMessage();
+                        }
+                    }
+                }
+                if (failure != null && failurePolicy == FailurePolicy.FAIL) {
+                    throw new IllegalStateException(failure);
+                }
+                return manifest;
+            }
+        }
+    }
+
+    private ManifestInfo await(Future<ManifestInfo> future, AtomicLong startedAt) throws InterruptedException, ExecutionException, TimeoutException {
+        while (true) {
+            long started = startedAt.get();
+            if (started == NOT_STARTED) {
+                // still waiting for a free worker
+                try {
+                    return future.get(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    continue;
+                }
+            }
+            long remaining = timeoutMillis - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+            return future.get(Math.max(0, remaining), TimeUnit.MILLISECONDS);
+        }
+    }
+}
\ No newline at end of file
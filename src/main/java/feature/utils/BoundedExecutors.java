@@ -0,0 +1,45 @@
+package feature.utils;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates the fixed size executors used to process features files concurrently.
+ * <p>
+ * On JDK 21+ the workers can be virtual threads. The plugin is compiled for Java 11 so the
+ * virtual thread factory is looked up reflectively, falling back to platform threads.
+ */
+final class BoundedExecutors {
+
+    private BoundedExecutors() {
+    }
+
+    static ExecutorService newExecutor(String name, int threads, boolean virtualThreads) {
+        ThreadFactory threadFactory = virtualThreads ? virtualThreadFactory() : null;
+        if (threadFactory == null) {
+            threadFactory = platformThreadFactory(name);
+        }
+        return Executors.newFixedThreadPool(Math.max(1, threads), threadFactory);
+    }
+
+    private static ThreadFactory virtualThreadFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            return (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // JDK without virtual threads
+            return null;
+        }
+    }
+
+    private static ThreadFactory platformThreadFactory(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, String.format("%s-%d", name, count.incrementAndGet()));
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
\ No newline at end of file
@@ -0,0 +1,82 @@
+package feature.utils;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * Byte searches of the line scanner, eight bytes at a time (SWAR): a word read from the array is xored with
+ * the searched byte repeated eight times, so that the matching bytes become zero, and the zero bytes are found
+ * with {@code (x - 0x01..01) & ~x & 0x80..80}. The lowest flagged byte is always a match, higher ones may be
+ * false positives and are never used.
+ */
+final class ByteSearch {
+
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+
+    private ByteSearch() {
+    }
+
+    /**
+     * @return the index of the first {@code b} in {@code bytes[from, to)}, -1 if there is none
+     */
+    static int indexOf(byte[] bytes, int from, int to, byte b) {
+        long pattern = ONES * (b & 0xFF);
+        int i = from;
+        for (; i + Long.BYTES <= to; i += Long.BYTES) {
+            long x = (long) LONGS.get(bytes, i) ^ pattern;
+            long found = (x - ONES) & ~x & HIGH_BITS;
+            if (found != 0) {
+                return i + (Long.numberOfTrailingZeros(found) >>> 3);
+            }
+        }
+        for (; i < to; i++) {
+            if (bytes[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the index of the first occurrence of the pattern in {@code bytes[from, to)}, -1 if there is none
+     */
+    static int indexOf(byte[] bytes, int from, int to, byte[] pattern) {
+        int last = to - pattern.length;
+        int i = from;
+        while (i <= last) {
+            i = indexOf(bytes, i, last + 1, pattern[0]);
+            if (i < 0) {
+                return -1;
+            }
+            if (regionMatches(bytes, i, pattern)) {
+                return i;
+            }
+            i++;
+        }
+        return -1;
+    }
+
+    /**
+     * @return the index of the last occurrence of the pattern in {@code bytes[from, to)}, -1 if there is none
+     */
+    static int lastIndexOf(byte[] bytes, int from, int to, byte[] pattern) {
+        for (int i = to - pattern.length; i >= from; i--) {
+            if (regionMatches(bytes, i, pattern)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean regionMatches(byte[] bytes, int offset, byte[] pattern) {
+        for (int j = 1; j < pattern.length; j++) {
+            if (bytes[offset + j] != pattern[j]) {
+                return false;
+            }
+        }
+        return bytes[offset] == pattern[0];
+    }
+}
\ No newline at end of file
@@ -0,0 +1,83 @@
+package feature.utils;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Named set of properties a features file is rewritten with by {@code generate-distribution-features}, configured in the pom:
+ *
+ * <pre>
+ * &lt;distributions&gt;
+ *     &lt;distribution&gt;
+ *         &lt;name&gt;karaf-4.4&lt;/name&gt;
+ *         &lt;properties&gt;
+ *             &lt;camel-version&gt;4.4.3&lt;/camel-version&gt;
+ *             &lt;grpc-version&gt;1.62.2&lt;/grpc-version&gt;
+ *         &lt;/properties&gt;
+ *     &lt;/distribution&gt;
+ * &lt;/distributions&gt;
+ * </pre>
+ *
+ * The properties override the ones of the project. The rewritten file is written to {@code outputFile} or, if not set,
+ * to {@code <distributionsDirectory>/<name>/<file name of the source>}.
+ */
+public class Distribution {
+
+    private String name;
+    private Map<String, String> properties;
+    private File outputFile;
+
+    public Distribution() {
+    }
+
+    Distribution(String name, Map<String, String> properties) {
+        this.name = name;
+        this.properties = properties;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public void setProperties(Map<String, String> properties) {
+        this.properties = properties;
+    }
+
+    public void setOutputFile(File outputFile) {
+        this.outputFile = outputFile;
+    }
+
+    String name() {
+        return name == null ? null : name.trim();
+    }
+
+    Map<String, String> properties() {
+        return properties == null ? Collections.emptyMap() : properties;
+    }
+
+    /**
+     * @return the configured output file, {@code null} if not set
+     */
+    File outputFile() {
+        return outputFile;
+    }
+
+    /**
+     * @return why the distribution can't be generated, {@code null} if it is valid
+     */
+    String validate() {
+        if (name() == null || name().isEmpty()) {
+            return "the name of a distribution is mandatory";
+        }
+        if (name().indexOf('/') >= 0 || name().indexOf('\\') >= 0 || name().equals(".") || name().equals("..")) {
+            return String.format("name %s must not be a path", name());
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return name() + " " + properties();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,236 @@
+package feature.utils;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Metrics of a mojo execution, written as {@code <goal>-<execution id>-report.json} and
+ * {@code <goal>-<execution id>-report.csv} so the cost of the plugin can be tracked across builds.
+ */
+class ExecutionReport {
+
+    private static final String[] COLUMNS = { "file", "status", "linesScanned", "linesChanged", "wrapBundles",
+            "headersInserted", "headersReplaced", "headersUnchanged", "versionsCleaned", "invalidVersions",
+            "placeholdersUnresolved", "osgiBundlesSkipped", "ruleEdits", "versionsAligned", "bytesRead", "bytesWritten", "indexMillis",
+            "readMillis", "matchMillis", "writeMillis" };
+
+    private final String goal;
+    private final String project;
+    private final long startNanos = System.nanoTime();
+    private final List<RewriteResult> results = new ArrayList<>();
+    private final List<Path> upToDate = new ArrayList<>();
+    private final List<Path> failures = new ArrayList<>();
+    private final RewriteResult totals = new RewriteResult(null);
+    private long resolveNanos;
+    private long durationNanos;
+
+    ExecutionReport(String goal, String project) {
+        this.goal = goal;
+        this.project = project;
+    }
+
+    void add(RewriteResult result) {
+        results.add(result);
+        totals.linesScanned += result.linesScanned;
+        totals.linesChanged += result.linesChanged;
+        totals.wrapBundles += result.wrapBundles;
+        totals.headersInserted += result.headersInserted;
+        totals.headersReplaced += result.headersReplaced;
+        totals.headersUnchanged += result.headersUnchanged;
+        totals.versionsCleaned += result.versionsCleaned;
+        totals.invalidVersions += result.invalidVersions;
+        totals.placeholdersUnresolved += result.placeholdersUnresolved;
+        totals.osgiBundlesSkipped += result.osgiBundlesSkipped;
+        totals.ruleEdits += result.ruleEdits;
+        totals.versionsAligned += result.versionsAligned;
+        totals.bytesRead += result.bytesRead;
+        totals.bytesWritten += result.bytesWritten;
+        totals.indexNanos += result.indexNanos;
+        totals.readNanos += result.readNanos;
+        totals.matchNanos += result.matchNanos;
+        totals.writeNanos += result.writeNanos;
+    }
+
+    void addUpToDate(Path featuresFile) {
+        upToDate.add(featuresFile);
+    }
+
+    void addFailure(Path featuresFile) {
+        failures.add(featuresFile);
+    }
+
+    void setResolveNanos(long resolveNanos) {
+        this.resolveNanos = resolveNanos;
+    }
+
+    int updatedFiles() {
+        int updated = 0;
+        for (RewriteResult result : results) {
+            if (result.written) {
+                updated++;
+            }
+        }
+        return updated;
+    }
+
+    List<Path> failures() {
+        return failures;
+    }
+
+    /**
+     * Stops the clock of the execution.
+     */
+    void finish() {
+        durationNanos = System.nanoTime() - startNanos;
+    }
+
+    String summary() {
+        return String.format("%s: %d files (%d updated, %d unchanged since last build, %d failed), %d lines, %d wrap bundles "
+                + "(%d inserted, %d replaced, %d unchanged, %d cleaned, %d invalid, %d unresolved, %d OSGi, %d rule edits, %d aligned), "
+                + "%d bytes read, %d written in %d ms (index %d, read %d, match %d, resolve %d, write %d)",
+                goal, results.size() + upToDate.size() + failures.size(), updatedFiles(), upToDate.size(), failures.size(),
+                totals.linesScanned, totals.wrapBundles, totals.headersInserted, totals.headersReplaced, totals.headersUnchanged,
+                totals.versionsCleaned, totals.invalidVersions, totals.placeholdersUnresolved, totals.osgiBundlesSkipped, totals.ruleEdits,
+                totals.versionsAligned, totals.bytesRead, totals.bytesWritten, millis(durationNanos), millis(totals.indexNanos),
+                millis(totals.readNanos), millis(totals.matchNanos), millis(resolveNanos), millis(totals.writeNanos));
+    }
+
+    /**
+     * @param executionId id of the mojo execution, so that the executions of a goal in a module don't overwrite each
+     *            other's report, may be {@code null}
+     */
+    void write(Path reportDirectory, String executionId) throws IOException {
+        Files.createDirectories(reportDirectory);
+        String name = executionId == null ? goal : goal + "-" + executionId;
+        try (Writer json = Files.newBufferedWriter(reportDirectory.resolve(name + "-report.json"), StandardCharsets.UTF_8)) {
+            writeJson(json);
+        }
+        try (Writer csv = Files.newBufferedWriter(reportDirectory.resolve(name + "-report.csv"), StandardCharsets.UTF_8)) {
+            writeCsv(csv);
+        }
+    }
+
+    void writeJson(Writer out) throws IOException {
+        out.write("{\n");
+        out.write("  \"goal\": " + quote(goal) + ",\n");
+        out.write("  \"project\": " + quote(project) + ",\n");
+        out.write("  \"durationMillis\": " + millis(durationNanos) + ",\n");
+        out.write("  \"resolveMillis\": " + millis(resolveNanos) + ",\n");
+        out.write("  \"totals\": " + toJson(null, "total", totals) + ",\n");
+        out.write("  \"files\": [");
+        String separator = "\n    ";
+        for (RewriteResult result : results) {
+            out.write(separator + toJson(result.featuresFile, status(result), result));
+            separator = ",\n    ";
+        }
+        for (Path file : upToDate) {
+            out.write(separator + toJson(file, "upToDate", new RewriteResult(file)));
+            separator = ",\n    ";
+        }
+        for (Path file : failures) {
+            out.write(separator + toJson(file, "failed", new RewriteResult(file)));
+            separator = ",\n    ";
+        }
+        out.write("\n  ]\n}\n");
+    }
+
+    void writeCsv(Writer out) throws IOException {
+        out.write(String.join(",", COLUMNS));
+        out.write('\n');
+        for (RewriteResult result : results) {
+            writeCsvRow(out, values(result.featuresFile, status(result), result));
+        }
+        for (Path file : upToDate) {
+            writeCsvRow(out, values(file, "upToDate", new RewriteResult(file)));
+        }
+        for (Path file : failures) {
+            writeCsvRow(out, values(file, "failed", new RewriteResult(file)));
+        }
+    }
+
+    private static void writeCsvRow(Writer out, Object[] values) throws IOException {
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            String value = String.valueOf(values[i]);
+            // quote file names holding separators
+            out.write(value.indexOf(',') >= 0 || value.indexOf('"') >= 0 ? '"' + value.replace("\"", "\"\"") + '"' : value);
+        }
+        out.write('\n');
+    }
+
+    private static String toJson(Path file, String status, RewriteResult result) {
+        Object[] values = values(file, status, result);
+        StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; i < COLUMNS.length; i++) {
+            if (values[i] == null) {
+                continue;
+            }
+            if (sb.length() > 1) {
+                sb.append(", ");
+            }
+            sb.append(quote(COLUMNS[i])).append(": ").append(values[i] instanceof String ? quote((String) values[i]) : values[i]);
+        }
+        return sb.append('}').toString();
+    }
+
+    private static String status(RewriteResult result) {
+        if (result.written) {
+            return "updated";
+        }
+        // found by a verification
+        return result.edits.isEmpty() ? "unchanged" : "outdated";
+    }
+
+    private static Object[] values(Path file, String status, RewriteResult result) {
+        return new Object[] { file == null ? null : file.toString(), status, result.linesScanned, result.linesChanged, result.wrapBundles,
+                result.headersInserted, result.headersReplaced, result.headersUnchanged, result.versionsCleaned, result.invalidVersions,
+                result.placeholdersUnresolved, result.osgiBundlesSkipped, result.ruleEdits, result.versionsAligned, result.bytesRead, result.bytesWritten, millis(result.indexNanos),
+                millis(result.readNanos), millis(result.matchNanos), millis(result.writeNanos) };
+    }
+
+    private static long millis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    static String quote(String value) {
+        if (value == null) {
+            return "null";
+        }
+        StringBuilder sb = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+            case '"':
+                sb.append("\\\"");
+                break;
+            case '\\':
+                sb.append("\\\\");
+                break;
+            case '\n':
+                sb.append("\\n");
+                break;
+            case '\r':
+                sb.append("\\r");
+                break;
+            case '\t':
+                sb.append("\\t");
+                break;
+            default:
+                if (c < 0x20) {
+                    sb.append(String.format("\\u%04x", (int) c));
+                } else {
+                    sb.append(c);
+                }
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,715 @@
+package feature.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Streaming rewrite of a features file.
+ * <p>
+ * The file is read line by line through a fixed size buffer. Only lines holding a {@code wrap:}
+ * entry are decoded, with the encoding of the XML declaration, and handed to the
+ * {@link WrapBundleVersionRewriter}, every other line is copied through as raw bytes, so memory
+ * use doesn't depend on the size of the file and line endings are kept. A bundle element spanning
+ * several lines, e.g. with its attributes, url or CDATA section on their own lines, is read ahead up
+ * to its end tag and handled as a single line, within {@link #MAX_ELEMENT_LINES} lines. The read ahead
+ * stops before a line starting another element, the tags inside comments are ignored.
+ * <p>
+ * Nothing is written until a line changes: the temporary file next to the features file is then
+ * created, the lines read so far copied into it at once and the rest written as it goes. The
+ * temporary file is synced then moved over the features file.
+ * <p>
+ * A file rewritten with several sets of properties is read into memory and parsed once by
+ * {@link #parse(Path, List, SessionCache)}, each rewrite then only copies the bytes between its changed bundles.
+ */
+class FeaturesFileRewriter {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    /** lines read ahead for the end tag of a bundle element */
+    static final int MAX_ELEMENT_LINES = 32;
+    private static final byte[] WRAP = WrapUrl.WRAP.getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] WRAP_MVN = WrapUrl.WRAP_MVN.getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] BUNDLE_START = "<bundle".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] BUNDLE_END = "</bundle>".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] SELF_CLOSING = "/>".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] COMMENT_START = "<!--".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] COMMENT_END = "-->".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CDATA_START = "<![CDATA[".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CDATA_END = "]]>".getBytes(StandardCharsets.US_ASCII);
+    /** flags of {@link #scanLine}: the line ends inside a comment */
+    static final int IN_COMMENT = 1;
+    /** the line starts a bundle element it doesn't end */
+    static final int OPENS_ELEMENT = 2;
+    /** the first tag of the line ends a bundle element, or its start tag */
+    static final int ENDS_ELEMENT = 4;
+    /** the first tag of the line starts or ends another element */
+    static final int OTHER_ELEMENT = 8;
+    private static final Pattern LINE_TERMINATOR = Pattern.compile("\r?\n");
+    private static final List<String> ALL_FEATURES = Collections.singletonList("*");
+    private static final Pattern ENCODING_DECLARATION = Pattern.compile("<\\?xml\\s[^>]*encoding\\s*=\\s*[\"']([A-Za-z0-9._:-]+)[\"']");
+
+    private final WrapBundleVersionRewriter rewriter;
+    private final SessionCache cache;
+
+    FeaturesFileRewriter(WrapBundleVersionRewriter rewriter) {
+        this(rewriter, null);
+    }
+
+    /**
+     * @param cache shares the features indexes and patterns with the other executions of the build, may be {@code null}
+     */
+    FeaturesFileRewriter(WrapBundleVersionRewriter rewriter, SessionCache cache) {
+        this.rewriter = rewriter;
+        this.cache = cache;
+    }
+
+    /**
+     * Rewrites the {@code wrap:} bundles of the given features file.
+     *
+     * @param targetFeatures names or patterns of the features whose bundles are processed, all of them if {@code null}
+     */
+    RewriteResult rewrite(Path featuresFile, List<String> targetFeatures) throws IOException {
+        RewriteResult result = new RewriteResult(featuresFile);
+        List<FeaturesIndex.Range> ranges = null;
+        if (targetFeatures != null) {
+            long indexStart = System.nanoTime();
+            ranges = selectFeatures(featuresFile, targetFeatures, result.missingFeatures);
+            result.indexNanos = System.nanoTime() - indexStart;
+            result.featureFound = !ranges.isEmpty();
+            if (!result.featureFound) {
+                return result;
+            }
+        }
+
+        MessageDigest digest = IncrementalState.newDigest();
+        Path tempFile = null;
+        FileChannel tempChannel = null;
+        OutputStream out = null;
+        try (FileChannel source = FileChannel.open(featuresFile, StandardOpenOption.READ)) {
+            SelectedLines reader = new SelectedLines(Channels.newInputStream(source), ranges);
+
+            long time = System.nanoTime();
+            while (reader.next()) {
+                long now = System.nanoTime();
+                result.readNanos += now - time;
+                time = now;
+                result.linesScanned += reader.lines();
+                result.bytesRead += reader.length();
+                byte[] bytes = reader.bytes();
+                int start = reader.start();
+                int contentLength = reader.contentLength();
+
+                byte[] newContent = null;
+                if (reader.isWrapCandidate()) {
+                    String line = reader.decode();
+                    String newLine = rewriter.rewrite(line, result);
+                    if (newLine != line) {
+                        result.linesChanged++;
+                        newContent = reader.encode(newLine);
+                    }
+                }
+                now = System.nanoTime();
+                result.matchNanos += now - time;
+                time = now;
+
+                if (newContent != null && out == null) {
+                    // nothing is written until the first changed line, the lines before it are copied at once
+                    tempFile = Files.createTempFile(featuresFile.toAbsolutePath().getParent(), featuresFile.getFileName().toString(), ".tmp");
+                    tempChannel = FileChannel.open(tempFile, StandardOpenOption.WRITE);
+                    transfer(source, reader.offset(), tempChannel);
+                    result.bytesWritten += reader.offset();
+                    out = new BufferedOutputStream(Channels.newOutputStream(tempChannel), BUFFER_SIZE);
+                }
+                if (newContent != null) {
+                    digest.update(newContent);
+                    digest.update(bytes, start + contentLength, reader.length() - contentLength);
+                    out.write(newContent);
+                    out.write(bytes, start + contentLength, reader.length() - contentLength);
+                    result.bytesWritten += newContent.length + reader.length() - contentLength;
+                } else {
+                    digest.update(bytes, start, reader.length());
+                    if (out != null) {
+                        out.write(bytes, start, reader.length());
+                        result.bytesWritten += reader.length();
+                    }
+                }
+                now = System.nanoTime();
+                result.writeNanos += now - time;
+                time = now;
+            }
+            result.contentHash = IncrementalState.toHex(digest.digest());
+
+            if (out != null) {
+                long moveStart = System.nanoTime();
+                out.flush();
+                tempChannel.force(true);
+                out.close();
+                replace(tempFile, featuresFile);
+                result.writeNanos += System.nanoTime() - moveStart;
+                result.written = true;
+            }
+        } finally {
+            if (tempChannel != null) {
+                tempChannel.close();
+            }
+            if (tempFile != null) {
+                Files.deleteIfExists(tempFile);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Copies the first bytes of the source to the current position of the target.
+     */
+    private static void transfer(FileChannel source, long count, FileChannel target) throws IOException {
+        long position = 0;
+        while (position < count) {
+            position += source.transferTo(position, count - position, target);
+        }
+    }
+
+    /**
+     * Moves the synced temporary file over the features file, atomically when the file system supports it, so that an
+     * interrupted build leaves either the old or the new file. The permissions of the features file are kept.
+     */
+    private static void replace(Path tempFile, Path featuresFile) throws IOException {
+        replace(tempFile, featuresFile, featuresFile);
+    }
+
+    /**
+     * @param permissionsOf file whose permissions are given to the target
+     */
+    private static void replace(Path tempFile, Path featuresFile, Path permissionsOf) throws IOException {
+        PosixFileAttributeView attributes = Files.getFileAttributeView(permissionsOf, PosixFileAttributeView.class);
+        if (attributes != null) {
+            Files.setPosixFilePermissions(tempFile, attributes.readAttributes().permissions());
+        }
+        try {
+            Files.move(tempFile, featuresFile, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tempFile, featuresFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Reads the given features file into memory and parses the {@code wrap:} bundles of its selected features, once for
+     * all the rewrites of {@link #rewrite(FeaturesModel, Path)}.
+     *
+     * @param targetFeatures names or patterns of the features whose bundles are parsed, all of them if {@code null}
+     * @param cache shares the features index with the other executions of the build, may be {@code null}
+     */
+    static FeaturesModel parse(Path featuresFile, List<String> targetFeatures, SessionCache cache) throws IOException {
+        List<FeaturesIndex.Range> ranges = null;
+        List<String> missing = new ArrayList<>();
+        long indexStart = System.nanoTime();
+        if (targetFeatures != null) {
+            ranges = selectFeatures(featuresFile, targetFeatures, missing, cache);
+        }
+        long readStart = System.nanoTime();
+        byte[] content = Files.readAllBytes(featuresFile);
+        List<FeaturesModel.WrapElement> elements = new ArrayList<>();
+        SelectedLines reader = new SelectedLines(new ByteArrayInputStream(content), ranges);
+        long lines = 0;
+        while (reader.next()) {
+            lines += reader.lines();
+            if (reader.isWrapCandidate()) {
+                WrapUrl url = WrapUrl.parse(reader.decode());
+                if (url != null) {
+                    elements.add(new FeaturesModel.WrapElement((int) reader.offset(), reader.contentLength(), lines - reader.lines() + 1, url));
+                }
+            }
+        }
+        FeaturesModel model = new FeaturesModel(featuresFile, content, reader.charset(), elements, lines);
+        model.featureFound = ranges == null || !ranges.isEmpty();
+        model.missingFeatures.addAll(missing);
+        model.indexNanos = readStart - indexStart;
+        model.readNanos = System.nanoTime() - readStart;
+        return model;
+    }
+
+    /**
+     * Writes the parsed features file with its {@code wrap:} bundles rewritten to the target, which is only replaced if
+     * its content changes. The edits are recorded in {@link RewriteResult#edits}, against the lines of the parsed file.
+     */
+    RewriteResult rewrite(FeaturesModel model, Path target) throws IOException {
+        RewriteResult result = new RewriteResult(target);
+        result.featureFound = model.featureFound;
+        result.missingFeatures.addAll(model.missingFeatures);
+        result.linesScanned = model.lines;
+
+        long time = System.nanoTime();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(model.content.length + BUFFER_SIZE);
+        int copied = 0;
+        for (FeaturesModel.WrapElement element : model.elements) {
+            String line = element.url.line;
+            String newLine = rewriter.rewrite(element.url, result);
+            if (newLine != line) {
+                result.linesChanged++;
+                addEdits(result.edits, element.lineNumber, line, newLine);
+                out.write(model.content, copied, element.offset - copied);
+                byte[] newContent = newLine.getBytes(model.charset);
+                out.write(newContent, 0, newContent.length);
+                copied = element.offset + element.contentLength;
+            }
+        }
+        out.write(model.content, copied, model.content.length - copied);
+        byte[] content = out.toByteArray();
+        result.contentHash = IncrementalState.toHex(IncrementalState.newDigest().digest(content));
+        long now = System.nanoTime();
+        result.matchNanos = now - time;
+        time = now;
+
+        if (Files.isRegularFile(target) && Files.size(target) == content.length && Arrays.equals(Files.readAllBytes(target), content)) {
+            result.readNanos = System.nanoTime() - time;
+            return result;
+        }
+        Path parent = target.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path tempFile = Files.createTempFile(parent, target.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.wrap(content);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            }
+            replace(tempFile, target, Files.exists(target) ? target : model.featuresFile);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+        result.bytesWritten = content.length;
+        result.writeNanos = System.nanoTime() - time;
+        result.written = true;
+        return result;
+    }
+
+    /**
+     * Read-only variant of {@link #rewrite(Path, List)}: records the edits the rewrite would make in
+     * {@link RewriteResult#edits} instead of writing them, nothing is hashed nor written to disk.
+     *
+     * @param stop when not {@code null}, set on the first edit found and checked before every line so
+     *        that the scan of all files sharing it stops at the first violation
+     */
+    RewriteResult verify(Path featuresFile, List<String> targetFeatures, AtomicBoolean stop) throws IOException {
+        RewriteResult result = new RewriteResult(featuresFile);
+        List<FeaturesIndex.Range> ranges = null;
+        if (targetFeatures != null) {
+            long indexStart = System.nanoTime();
+            ranges = selectFeatures(featuresFile, targetFeatures, result.missingFeatures);
+            result.indexNanos = System.nanoTime() - indexStart;
+            result.featureFound = !ranges.isEmpty();
+            if (!result.featureFound) {
+                return result;
+            }
+        }
+
+        try (InputStream in = Files.newInputStream(featuresFile)) {
+            SelectedLines reader = new SelectedLines(in, ranges);
+            long time = System.nanoTime();
+            while ((stop == null || !stop.get()) && reader.next()) {
+                long now = System.nanoTime();
+                result.readNanos += now - time;
+                time = now;
+                result.linesScanned += reader.lines();
+                result.bytesRead += reader.length();
+                if (reader.isWrapCandidate()) {
+                    String line = reader.decode();
+                    String newLine = rewriter.rewrite(line, result);
+                    if (newLine != line) {
+                        result.linesChanged++;
+                        addEdits(result.edits, result.linesScanned - reader.lines() + 1, line, newLine);
+                        if (stop != null) {
+                            stop.set(true);
+                        }
+                    }
+                }
+                now = System.nanoTime();
+                result.matchNanos += now - time;
+                time = now;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Adds an edit per changed line of a rewritten bundle element, the rewrite never changes the number of lines.
+     */
+    private static void addEdits(List<LineEdit> edits, long firstLineNumber, String element, String newElement) {
+        if (element.indexOf('\n') < 0) {
+            edits.add(new LineEdit(firstLineNumber, element, newElement));
+            return;
+        }
+        String[] lines = LINE_TERMINATOR.split(element, -1);
+        String[] newLines = LINE_TERMINATOR.split(newElement, -1);
+        for (int i = 0; i < lines.length && i < newLines.length; i++) {
+            if (!lines[i].equals(newLines[i])) {
+                edits.add(new LineEdit(firstLineNumber + i, lines[i], newLines[i]));
+            }
+        }
+    }
+
+    /**
+     * Collects the artifacts wrapped by the selected features of the given file, without rewriting it.
+     */
+    void collectArtifacts(Path featuresFile, List<String> targetFeatures, Set<ArtifactKey> artifacts) throws IOException {
+        List<FeaturesIndex.Range> ranges = null;
+        if (targetFeatures != null) {
+            ranges = selectFeatures(featuresFile, targetFeatures, new ArrayList<>());
+            if (ranges.isEmpty()) {
+                return;
+            }
+        }
+
+        try (InputStream in = Files.newInputStream(featuresFile)) {
+            SelectedLines reader = new SelectedLines(in, ranges);
+            while (reader.next()) {
+                if (reader.isWrapCandidate()) {
+                    ArtifactKey artifact = rewriter.artifactKey(reader.decode());
+                    if (artifact != null) {
+                        artifacts.add(artifact);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Receives the {@code wrap:} lines found by {@link #scanWrapLines(Path, List, WrapLineConsumer)}.
+     */
+    interface WrapLineConsumer {
+        /**
+         * @param feature name of the feature declaring the line
+         */
+        void accept(String feature, String line);
+    }
+
+    /**
+     * Hands the {@code wrap:} lines of the selected features of the given file to the consumer in a single pass,
+     * without rewriting the file.
+     *
+     * @param targetFeatures names or patterns of the features to scan, all of them if {@code null}
+     */
+    void scanWrapLines(Path featuresFile, List<String> targetFeatures, WrapLineConsumer consumer) throws IOException {
+        List<FeaturesIndex.Range> ranges = selectFeatures(featuresFile, targetFeatures != null ? targetFeatures : ALL_FEATURES, new ArrayList<>());
+        if (ranges.isEmpty()) {
+            return;
+        }
+
+        try (InputStream in = Files.newInputStream(featuresFile)) {
+            SelectedLines reader = new SelectedLines(in, ranges);
+            while (reader.next()) {
+                if (reader.isWrapCandidate()) {
+                    consumer.accept(reader.feature(), reader.decode());
+                }
+            }
+        }
+    }
+
+    private List<FeaturesIndex.Range> selectFeatures(Path featuresFile, List<String> targetFeatures, List<String> missing) throws IOException {
+        return selectFeatures(featuresFile, targetFeatures, missing, cache);
+    }
+
+    private static List<FeaturesIndex.Range> selectFeatures(Path featuresFile, List<String> targetFeatures, List<String> missing, SessionCache cache)
+            throws IOException {
+        if (cache == null) {
+            return FeaturesIndex.build(featuresFile).select(targetFeatures, missing);
+        }
+        return cache.index(featuresFile).select(targetFeatures, missing, cache::pattern);
+    }
+
+    /**
+     * Line reader that tells whether the current line belongs to the selected features and may hold a {@code wrap:} entry.
+     * The lines of a selected bundle element spanning several lines are read ahead and returned as a single line.
+     */
+    private static final class SelectedLines {
+
+        private final LineReader reader;
+        private final List<FeaturesIndex.Range> ranges;
+        private int rangeIndex;
+        private Charset charset = StandardCharsets.UTF_8;
+        private byte[] element = new byte[1024];
+        private byte[] bytes;
+        private int start;
+        private int length;
+        private int contentLength;
+        private long offset;
+        private int lines;
+        private boolean inComment;
+        /** the current line of the reader ended the read ahead of an element, it is the next line */
+        private boolean pending;
+
+        /**
+         * @param ranges the selected features, all lines are selected if {@code null}
+         */
+        SelectedLines(InputStream in, List<FeaturesIndex.Range> ranges) {
+            this.reader = new LineReader(in);
+            this.ranges = ranges;
+        }
+
+        boolean next() throws IOException {
+            if (pending) {
+                pending = false;
+            } else if (!reader.next()) {
+                return false;
+            }
+            if (reader.offset() == 0) {
+                charset = declaredEncoding(reader.bytes(), reader.start(), reader.contentLength());
+            }
+            bytes = reader.bytes();
+            start = reader.start();
+            length = reader.length();
+            contentLength = reader.contentLength();
+            offset = reader.offset();
+            lines = 1;
+            int flags = scanLine(bytes, start, start + contentLength, inComment);
+            inComment = (flags & IN_COMMENT) != 0;
+            if ((flags & OPENS_ELEMENT) != 0 && isSelected()) {
+                readElement();
+            }
+            return true;
+        }
+
+        /**
+         * Reads ahead up to the line holding the end tag of the element or {@link #MAX_ELEMENT_LINES} lines, a line
+         * starting another element isn't read as part of the element but as the next line.
+         */
+        private void readElement() throws IOException {
+            length = 0;
+            append();
+            int terminatorLength = reader.length() - reader.contentLength();
+            boolean closed = false;
+            while (!closed && lines < MAX_ELEMENT_LINES && reader.next()) {
+                int lineStart = reader.start();
+                int flags = scanLine(reader.bytes(), lineStart, lineStart + reader.contentLength(), inComment);
+                if ((flags & OTHER_ELEMENT) != 0) {
+                    // the element isn't closed, e.g. a missing end tag
+                    pending = true;
+                    break;
+                }
+                inComment = (flags & IN_COMMENT) != 0;
+                append();
+                lines++;
+                terminatorLength = reader.length() - reader.contentLength();
+                closed = (flags & ENDS_ELEMENT) != 0;
+            }
+            bytes = element;
+            start = 0;
+            contentLength = length - terminatorLength;
+        }
+
+        private void append() {
+            if (length + reader.length() > element.length) {
+                element = Arrays.copyOf(element, Math.max(element.length * 2, length + reader.length()));
+            }
+            System.arraycopy(reader.bytes(), reader.start(), element, length, reader.length());
+            length += reader.length();
+        }
+
+        long offset() {
+            return offset;
+        }
+
+        /**
+         * @return the current line without its terminator, decoded with the encoding of the file
+         */
+        String decode() {
+            return new String(bytes, start, contentLength, charset);
+        }
+
+        byte[] encode(String line) {
+            return line.getBytes(charset);
+        }
+
+        Charset charset() {
+            return charset;
+        }
+
+        byte[] bytes() {
+            return bytes;
+        }
+
+        /**
+         * @return the index of the current line in {@link #bytes()}
+         */
+        int start() {
+            return start;
+        }
+
+        int length() {
+            return length;
+        }
+
+        int contentLength() {
+            return contentLength;
+        }
+
+        /**
+         * @return the number of lines of the file read as the current line
+         */
+        int lines() {
+            return lines;
+        }
+
+        private boolean isSelected() {
+            if (ranges != null) {
+                while (rangeIndex < ranges.size() && ranges.get(rangeIndex).end <= offset) {
+                    rangeIndex++;
+                }
+                return rangeIndex < ranges.size() && ranges.get(rangeIndex).overlaps(offset, offset + contentLength);
+            }
+            return true;
+        }
+
+        boolean isWrapCandidate() {
+            return isSelected() && ByteSearch.indexOf(bytes, start, start + contentLength, WRAP) >= 0;
+        }
+
+        /**
+         * @return the name of the selected feature holding the current line, only valid after {@link #isWrapCandidate()}
+         */
+        String feature() {
+            return ranges.get(rangeIndex).name;
+        }
+    }
+
+    /**
+     * Scans the tags of the line {@code bytes[from, to)}, skipping comments and CDATA sections.
+     *
+     * @param inComment whether the line starts inside a comment
+     * @return the {@link #IN_COMMENT}, {@link #OPENS_ELEMENT}, {@link #ENDS_ELEMENT} and {@link #OTHER_ELEMENT} flags of the line
+     */
+    static int scanLine(byte[] bytes, int from, int to, boolean inComment) {
+        int flags = 0;
+        boolean firstTag = true;
+        boolean open = false;
+        int i = from;
+        while (i < to) {
+            if (inComment) {
+                int commentEnd = ByteSearch.indexOf(bytes, i, to, COMMENT_END);
+                if (commentEnd < 0) {
+                    break;
+                }
+                inComment = false;
+                i = commentEnd + COMMENT_END.length;
+                continue;
+            }
+            int tag = ByteSearch.indexOf(bytes, i, to, (byte) '<');
+            int textEnd = tag < 0 ? to : tag;
+            if ((open || firstTag) && ByteSearch.indexOf(bytes, i, textEnd, SELF_CLOSING) >= 0) {
+                // the end of a start tag begun on the line or on a previous one
+                if (firstTag && !open) {
+                    flags |= ENDS_ELEMENT;
+                }
+                open = false;
+                firstTag = false;
+            }
+            if (tag < 0) {
+                break;
+            }
+            if (startsWith(bytes, tag, to, COMMENT_START)) {
+                inComment = true;
+                i = tag + COMMENT_START.length;
+            } else if (startsWith(bytes, tag, to, CDATA_START)) {
+                int cdataEnd = ByteSearch.indexOf(bytes, tag + CDATA_START.length, to, CDATA_END);
+                i = cdataEnd < 0 ? to : cdataEnd + CDATA_END.length;
+            } else if (tag + 1 < to && bytes[tag + 1] == '/') {
+                if (firstTag) {
+                    flags |= startsWith(bytes, tag, to, BUNDLE_END) ? ENDS_ELEMENT : OTHER_ELEMENT;
+                }
+                open = false;
+                firstTag = false;
+                i = tag + 2;
+            } else {
+                if (firstTag) {
+                    flags |= OTHER_ELEMENT;
+                }
+                firstTag = false;
+                i = tag + 1;
+                if (isBundleStart(bytes, tag, to)) {
+                    open = true;
+                    i = tag + BUNDLE_START.length;
+                }
+            }
+        }
+        if (open) {
+            flags |= OPENS_ELEMENT;
+        }
+        if (inComment) {
+            flags |= IN_COMMENT;
+        }
+        return flags;
+    }
+
+    private static boolean isBundleStart(byte[] bytes, int tag, int to) {
+        if (!startsWith(bytes, tag, to, BUNDLE_START)) {
+            return false;
+        }
+        int nameEnd = tag + BUNDLE_START.length;
+        // and not another element, e.g. <bundles>
+        return nameEnd == to || bytes[nameEnd] == '>' || bytes[nameEnd] == '/' || bytes[nameEnd] == ' ' || bytes[nameEnd] == '\t';
+    }
+
+    private static boolean startsWith(byte[] bytes, int from, int to, byte[] prefix) {
+        if (to - from < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (bytes[from + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the encoding declared by the XML declaration of the first line, UTF-8 if there is none or it doesn't
+     *         encode {@code wrap:mvn:} as ASCII
+     */
+    static Charset declaredEncoding(byte[] bytes, int start, int length) {
+        Matcher matcher = ENCODING_DECLARATION.matcher(new String(bytes, start, length, StandardCharsets.ISO_8859_1));
+        return charsetOf(matcher.find() ? matcher.group(1) : null);
+    }
+
+    /**
+     * @param encoding encoding declared by a features file, may be {@code null}
+     * @return the charset of the encoding, UTF-8 if it is unknown or doesn't encode {@code wrap:mvn:} as ASCII
+     */
+    static Charset charsetOf(String encoding) {
+        if (encoding != null) {
+            try {
+                Charset charset = Charset.forName(encoding);
+                if (Arrays.equals(WRAP_MVN, WrapUrl.WRAP_MVN.getBytes(charset))) {
+                    return charset;
+                }
+            } catch (IllegalArgumentException e) {
+                // unknown encoding
+            }
+        }
+        return StandardCharsets.UTF_8;
+    }
+}
\ No newline at end of file
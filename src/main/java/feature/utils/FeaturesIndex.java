@@ -0,0 +1,381 @@
+package feature.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Index of the features declared by a Karaf features file: feature name to the byte range of its element.
+ * <p>
+ * The index is built with a single pass over the raw bytes of the file, so that the ranges are exact whatever
+ * the layout, e.g. several features on a line. Comments, CDATA sections and processing instructions are skipped
+ * and the elements are nested by depth: only the {@code <feature>} elements that are direct children of the
+ * {@code <features>} root are indexed, the {@code <feature>} dependencies declared inside a feature are not.
+ */
+final class FeaturesIndex {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final byte[] COMMENT_START = "<!--".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] COMMENT_END = "-->".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CDATA_START = "<![CDATA[".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CDATA_END = "]]>".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] PI_START = "<?".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] PI_END = "?>".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] DECLARATION_START = "<!".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] END_TAG_START = "</".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TAG_END = ">".getBytes(StandardCharsets.US_ASCII);
+    private static final Pattern NAME_ATTRIBUTE = Pattern.compile("\\sname\\s*=\\s*(?:\"([^\"]*)\"|'([^']*)')");
+
+    /**
+     * Byte range of a feature element, from right after its start tag to right after its end tag, the tag itself
+     * for a self-closing one.
+     */
+    static final class Range {
+        final String name;
+        final long start;
+        final long end;
+
+        Range(String name, long start, long end) {
+            this.name = name;
+            this.start = start;
+            this.end = end;
+        }
+
+        /**
+         * @return {@code true} if the given region of the file overlaps this range
+         */
+        boolean overlaps(long from, long to) {
+            return from < end && to > start;
+        }
+    }
+
+    private final Map<String, List<Range>> features;
+
+    private FeaturesIndex(Map<String, List<Range>> features) {
+        this.features = features;
+    }
+
+    static FeaturesIndex build(Path featuresFile) throws IOException {
+        return build(featuresFile, BUFFER_SIZE);
+    }
+
+    static FeaturesIndex build(Path featuresFile, int bufferSize) throws IOException {
+        Map<String, List<Range>> features = new HashMap<>();
+        try (InputStream in = Files.newInputStream(featuresFile)) {
+            Scanner scanner = new Scanner(in, featuresFile, bufferSize);
+            Charset charset = StandardCharsets.UTF_8;
+            int depth = 0;
+            String name = null;
+            long start = -1;
+            while (scanner.skipTo((byte) '<')) {
+                long tagStart = scanner.position();
+                if (scanner.startsWith(COMMENT_START)) {
+                    scanner.skipPast(COMMENT_END);
+                } else if (scanner.startsWith(CDATA_START)) {
+                    scanner.skipPast(CDATA_END);
+                } else if (scanner.startsWith(PI_START)) {
+                    byte[] instruction = scanner.readPast(PI_END);
+                    if (tagStart == 0) {
+                        charset = FeaturesFileRewriter.declaredEncoding(instruction, 0, instruction.length);
+                    }
+                } else if (scanner.startsWith(END_TAG_START)) {
+                    scanner.skipPast(TAG_END);
+                    if (depth == 2 && name != null) {
+                        Range feature = new Range(name, start, scanner.position());
+                        features.computeIfAbsent(feature.name, key -> new ArrayList<>(1)).add(feature);
+                        name = null;
+                    }
+                    depth--;
+                } else if (scanner.startsWith(DECLARATION_START)) {
+                    scanner.skipPast(TAG_END);
+                } else {
+                    byte[] tag = scanner.readTag();
+                    boolean selfClosing = tag.length >= 2 && tag[tag.length - 2] == '/';
+                    String featureName = depth == 1 && isFeature(tag) ? nameOf(tag, charset) : null;
+                    if (featureName != null && selfClosing) {
+                        Range feature = new Range(featureName, tagStart, scanner.position());
+                        features.computeIfAbsent(feature.name, key -> new ArrayList<>(1)).add(feature);
+                    } else if (featureName != null) {
+                        name = featureName;
+                        start = scanner.position();
+                    }
+                    if (!selfClosing) {
+                        depth++;
+                    }
+                }
+            }
+        }
+        return new FeaturesIndex(features);
+    }
+
+    /**
+     * @return {@code true} if the start tag is the one of a {@code feature} element, whatever its namespace prefix
+     */
+    private static boolean isFeature(byte[] tag) {
+        int nameEnd = 1;
+        while (nameEnd < tag.length && tag[nameEnd] != ' ' && tag[nameEnd] != '\t' && tag[nameEnd] != '\r' && tag[nameEnd] != '\n'
+                && tag[nameEnd] != '/' && tag[nameEnd] != '>') {
+            nameEnd++;
+        }
+        int nameStart = 1;
+        for (int i = 1; i < nameEnd; i++) {
+            if (tag[i] == ':') {
+                nameStart = i + 1;
+            }
+        }
+        return nameEnd - nameStart == 7 && new String(tag, nameStart, 7, StandardCharsets.US_ASCII).equals("feature");
+    }
+
+    /**
+     * @return the value of the {@code name} attribute of the start tag, {@code null} if it has none
+     */
+    private static String nameOf(byte[] tag, Charset charset) {
+        Matcher matcher = NAME_ATTRIBUTE.matcher(new String(tag, StandardCharsets.ISO_8859_1));
+        if (!matcher.find()) {
+            return null;
+        }
+        String value = matcher.group(1) != null ? matcher.group(1) : matcher.group(2);
+        // back to the real encoding of the name
+        value = new String(value.getBytes(StandardCharsets.ISO_8859_1), charset);
+        if (value.indexOf('&') < 0) {
+            return value;
+        }
+        return value.replace("&lt;", "<").replace("&gt;", ">").replace("&quot;", "\"").replace("&apos;", "'").replace("&amp;", "&");
+    }
+
+    /**
+     * Reads the file through a buffer that keeps the bytes of the construct being scanned, e.g. a tag or the end of a comment.
+     */
+    private static final class Scanner {
+
+        private final InputStream in;
+        private final Path file;
+        private byte[] buffer;
+        /** offset in the file of the first byte of the buffer */
+        private long base;
+        private int position;
+        private int limit;
+
+        Scanner(InputStream in, Path file, int bufferSize) {
+            this.in = in;
+            this.file = file;
+            this.buffer = new byte[bufferSize];
+        }
+
+        long position() {
+            return base + position;
+        }
+
+        /**
+         * Moves to the next occurrence of the byte.
+         *
+         * @return {@code false} at the end of the file
+         */
+        boolean skipTo(byte b) throws IOException {
+            while (true) {
+                int found = ByteSearch.indexOf(buffer, position, limit, b);
+                if (found >= 0) {
+                    position = found;
+                    return true;
+                }
+                position = limit;
+                if (!fill()) {
+                    return false;
+                }
+            }
+        }
+
+        boolean startsWith(byte[] prefix) throws IOException {
+            while (limit - position < prefix.length) {
+                if (!fill()) {
+                    return false;
+                }
+            }
+            return Arrays.equals(buffer, position, position + prefix.length, prefix, 0, prefix.length);
+        }
+
+        /**
+         * Moves right after the next occurrence of the terminator.
+         */
+        void skipPast(byte[] terminator) throws IOException {
+            int from = position;
+            while (true) {
+                int found = ByteSearch.indexOf(buffer, from, limit, terminator);
+                if (found >= 0) {
+                    position = found + terminator.length;
+                    return;
+                }
+                // only the bytes the terminator may start with are kept
+                position = Math.max(position, limit - terminator.length + 1);
+                fillOrFail(terminator);
+                from = position;
+            }
+        }
+
+        /**
+         * @return the bytes from the current position to right after the next occurrence of the terminator
+         */
+        byte[] readPast(byte[] terminator) throws IOException {
+            int from = position;
+            while (true) {
+                int found = ByteSearch.indexOf(buffer, from, limit, terminator);
+                if (found >= 0) {
+                    return read(found + terminator.length);
+                }
+                int resume = Math.max(position, limit - terminator.length + 1) - position;
+                fillOrFail(terminator);
+                from = position + resume;
+            }
+        }
+
+        /**
+         * @return the start tag at the current position, up to its {@code >} outside of the quoted attribute values
+         */
+        byte[] readTag() throws IOException {
+            byte quote = 0;
+            int i = position;
+            while (true) {
+                for (; i < limit; i++) {
+                    byte b = buffer[i];
+                    if (quote != 0) {
+                        if (b == quote) {
+                            quote = 0;
+                        }
+                    } else if (b == '"' || b == '\'') {
+                        quote = b;
+                    } else if (b == '>') {
+                        return read(i + 1);
+                    }
+                }
+                int resume = i - position;
+                fillOrFail(TAG_END);
+                i = position + resume;
+            }
+        }
+
+        private byte[] read(int end) {
+            byte[] read = Arrays.copyOfRange(buffer, position, end);
+            position = end;
+            return read;
+        }
+
+        private void fillOrFail(byte[] expected) throws IOException {
+            if (!fill()) {
+                throw new IOException(String.format("Unable to parse features file %s: %s expected at the end of the file", file,
+                        new String(expected, StandardCharsets.US_ASCII)));
+            }
+        }
+
+        /**
+         * Moves the bytes from the current position to the beginning of the buffer and reads after them.
+         *
+         * @return {@code false} at the end of the file
+         */
+        private boolean fill() throws IOException {
+            int kept = limit - position;
+            if (position > 0) {
+                System.arraycopy(buffer, position, buffer, 0, kept);
+            } else if (kept == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            base += position;
+            position = 0;
+            limit = kept;
+            int read = in.read(buffer, limit, buffer.length - limit);
+            if (read < 0) {
+                return false;
+            }
+            limit += read;
+            return true;
+        }
+    }
+
+    Set<String> names() {
+        return Collections.unmodifiableSet(features.keySet());
+    }
+
+    /**
+     * @return the ranges of the features with the given name, an empty list if there is none
+     */
+    List<Range> get(String name) {
+        return features.getOrDefault(name, Collections.emptyList());
+    }
+
+    /**
+     * Resolves the given exact feature names or {@code *}/{@code ?} patterns.
+     *
+     * @param missing collects the names and patterns that didn't select any feature
+     * @return the ranges of the selected features, sorted by offset
+     */
+    List<Range> select(List<String> namesOrPatterns, List<String> missing) {
+        return select(namesOrPatterns, missing, FeaturesIndex::toPattern);
+    }
+
+    /**
+     * @param patterns compiles the {@code *}/{@code ?} patterns, e.g. through a cache
+     */
+    List<Range> select(List<String> namesOrPatterns, List<String> missing, Function<String, Pattern> patterns) {
+        Set<Range> selected = new LinkedHashSet<>();
+        for (String nameOrPattern : namesOrPatterns) {
+            List<Range> matches;
+            if (isPattern(nameOrPattern)) {
+                matches = new ArrayList<>();
+                Pattern pattern = patterns.apply(nameOrPattern);
+                for (Map.Entry<String, List<Range>> feature : features.entrySet()) {
+                    if (pattern.matcher(feature.getKey()).matches()) {
+                        matches.addAll(feature.getValue());
+                    }
+                }
+            } else {
+                matches = get(nameOrPattern);
+            }
+
+            if (matches.isEmpty()) {
+                missing.add(nameOrPattern);
+            }
+            selected.addAll(matches);
+        }
+
+        List<Range> ranges = new ArrayList<>(selected);
+        ranges.sort(Comparator.comparingLong(range -> range.start));
+        return ranges;
+    }
+
+    static boolean isPattern(String nameOrPattern) {
+        return nameOrPattern.indexOf('*') >= 0 || nameOrPattern.indexOf('?') >= 0;
+    }
+
+    static Pattern toPattern(String glob) {
+        StringBuilder regex = new StringBuilder(glob.length() + 8);
+        int literalStart = 0;
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c == '*' || c == '?') {
+                if (i > literalStart) {
+                    regex.append(Pattern.quote(glob.substring(literalStart, i)));
+                }
+                regex.append(c == '*' ? ".*" : ".");
+                literalStart = i + 1;
+            }
+        }
+        if (literalStart < glob.length()) {
+            regex.append(Pattern.quote(glob.substring(literalStart)));
+        }
+        return Pattern.compile(regex.toString());
+    }
+}
\ No newline at end of file
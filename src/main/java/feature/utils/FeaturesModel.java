@@ -0,0 +1,53 @@
+package feature.utils;
+
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A features file read into memory once with the {@code wrap:} bundles of its selected features parsed, see
+ * {@link FeaturesFileRewriter#parse(Path, List, SessionCache)}. The model isn't changed once parsed: rewriters with
+ * different properties share it and only copy the bytes between the bundles they change.
+ */
+final class FeaturesModel {
+
+    /**
+     * A parsed {@code wrap:} line, or bundle element spanning several lines, of the file.
+     */
+    static final class WrapElement {
+        /** index of the element in {@link FeaturesModel#content} */
+        final int offset;
+        /** length of the element without the terminator of its last line */
+        final int contentLength;
+        /** number of its first line, from 1 */
+        final long lineNumber;
+        final WrapUrl url;
+
+        WrapElement(int offset, int contentLength, long lineNumber, WrapUrl url) {
+            this.offset = offset;
+            this.contentLength = contentLength;
+            this.lineNumber = lineNumber;
+            this.url = url;
+        }
+    }
+
+    final Path featuresFile;
+    final byte[] content;
+    final Charset charset;
+    final List<WrapElement> elements;
+    final long lines;
+    boolean featureFound = true;
+    /** target feature names or patterns that didn't select any feature */
+    final List<String> missingFeatures = new ArrayList<>();
+    long indexNanos;
+    long readNanos;
+
+    FeaturesModel(Path featuresFile, byte[] content, Charset charset, List<WrapElement> elements, long lines) {
+        this.featuresFile = featuresFile;
+        this.content = content;
+        this.charset = charset;
+        this.elements = elements;
+        this.lines = lines;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,61 @@
+package feature.utils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Hashes of a features file and of each of its feature elements, used by the watch mode to find the features
+ * that were edited since the file was last processed.
+ */
+final class FeaturesSnapshot {
+
+    final FeaturesIndex index;
+    final String contentHash;
+    /** feature name to the hash of its element(s) */
+    private final Map<String, String> featureHashes;
+
+    private FeaturesSnapshot(FeaturesIndex index, String contentHash, Map<String, String> featureHashes) {
+        this.index = index;
+        this.contentHash = contentHash;
+        this.featureHashes = featureHashes;
+    }
+
+    /**
+     * @param cache provides the index of the file, may be {@code null}
+     */
+    static FeaturesSnapshot take(Path featuresFile, SessionCache cache) throws IOException {
+        FeaturesIndex index = cache != null ? cache.index(featuresFile) : FeaturesIndex.build(featuresFile);
+        byte[] content = Files.readAllBytes(featuresFile);
+        MessageDigest digest = IncrementalState.newDigest();
+        Map<String, String> featureHashes = new HashMap<>();
+        for (String name : index.names()) {
+            for (FeaturesIndex.Range range : index.get(name)) {
+                int end = (int) Math.min(range.end, content.length);
+                digest.update(content, (int) Math.min(range.start, end), end - (int) Math.min(range.start, end));
+            }
+            featureHashes.put(name, IncrementalState.toHex(digest.digest()));
+        }
+        digest.update(content);
+        return new FeaturesSnapshot(index, IncrementalState.toHex(digest.digest()), featureHashes);
+    }
+
+    /**
+     * @param previous snapshot of the file when it was last processed, {@code null} if it wasn't
+     * @return the names of the features that were added or edited since the previous snapshot
+     */
+    Set<String> changedFeatures(FeaturesSnapshot previous) {
+        Set<String> changed = new LinkedHashSet<>();
+        for (Map.Entry<String, String> feature : featureHashes.entrySet()) {
+            if (previous == null || !feature.getValue().equals(previous.featureHashes.get(feature.getKey()))) {
+                changed.add(feature.getKey());
+            }
+        }
+        return changed;
+    }
+}
\ No newline at end of file
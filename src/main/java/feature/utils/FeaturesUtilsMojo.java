@@ -1,59 +1,36 @@
 package feature.utils;
 
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.PrintWriter;
-import java.io.StringWriter;
-import java.net.URL;
-import java.nio.file.Files;
-import java.nio.file.Paths;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.jar.JarFile;
-import java.util.jar.Manifest;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
-import org.apache.maven.project.MavenProject;
-import org.osgi.framework.Version;
-import org.apache.maven.model.Dependency;
-import org.apache.maven.model.Repository;
-import org.apache.maven.model.building.DefaultModelBuilderFactory;
-import org.apache.maven.model.building.DefaultModelBuildingRequest;
-import org.apache.maven.model.building.ModelBuildingRequest;
-import org.apache.maven.model.resolution.ModelResolver;
-import org.eclipse.aether.RepositorySystem;
-import org.eclipse.aether.RepositorySystemSession;
-import org.eclipse.aether.artifact.Artifact;
-import org.eclipse.aether.artifact.DefaultArtifact;
-import shaded.org.eclipse.aether.connector.basic.BasicRepositoryConnectorFactory;
-import org.eclipse.aether.impl.DefaultServiceLocator;
-import org.eclipse.aether.impl.DefaultServiceLocator.ErrorHandler;
-import org.eclipse.aether.repository.RemoteRepository;
-import org.eclipse.aether.resolution.ArtifactRequest;
-import org.eclipse.aether.resolution.ArtifactResolutionException;
-import org.eclipse.aether.resolution.ArtifactResult;
-
-import java.util.ArrayList;
-import java.util.List;
 
 
 @Mojo(name = "ensure-wrap-bundle-version", defaultPhase = LifecyclePhase.PROCESS_SOURCES)
-public class FeaturesUtilsMojo extends AbstractMojo {
+public class FeaturesUtilsMojo extends AbstractFeaturesMojo {
 
-    @Parameter(property = "featuresFilePath", required = true)
-    private String featuresFilePath;
+    /**
+     * Skip features files whose content and resolved pom properties didn't change since the last build.
+     */
+    @Parameter(property = "featuresUtils.incremental", defaultValue = "false", required = false)
+    private boolean incremental;
 
-    @Parameter(property = "targetFeature", required = false)
-    private String targetFeature = null;
-    
-    @Parameter(defaultValue = "${project}", readonly = true, required = true)
-    private MavenProject project;
+    @Parameter(defaultValue = "${project.build.directory}/feature-utils/incremental-state.properties", required = false)
+    private File incrementalStateFile;
 	
 	public static final List<String> OSGI_HEADERS_AFTER_BUNDLE_VEIRSION = Arrays.asList(
 	        //"Bundle-Version",
@@ -70,129 +47,111 @@ public class FeaturesUtilsMojo extends AbstractMojo {
 	
 	@Override
     public void execute() throws MojoExecutionException {
-        try {
-            // Read all lines from the file
-            List<String> lines = Files.readAllLines(Paths.get(featuresFilePath));
+        List<Path> files = collectFeaturesFiles();
+        if (files.isEmpty()) {
+            getLog().warn("No features file to process, configure featuresFilePath, featuresFiles or includes");
+            return;
+        }
 
-            int firstIndex = 0;
-            int lastIndex = lines.size()-1;
-            if (targetFeature != null) {
-                Pattern featureStartPattern = Pattern.compile("^<feature.*" + targetFeature + ".*>$");
-                Pattern featureEndPattern = Pattern.compile("^</feature>$");
-                
-                for (int i = 0; i < lines.size(); i++) {
-                    Matcher featureStartMatcher = featureStartPattern.matcher(lines.get(i).trim());
-                    if(featureStartMatcher.matches()) {
-                        firstIndex = i + 1;
-                    }
-                    
-                    // start of the feature alrady found
-                    if(firstIndex != 0) {                        
-                        Matcher featureEndMatcher = featureEndPattern.matcher(lines.get(i).trim());
-                        if(featureEndMatcher.matches()) {
-                            lastIndex = i - 1;
-                            break;
+        ExecutionReport report = new ExecutionReport("ensure-wrap-bundle-version", project.getId());
+        List<String> selectedFeatures = getSelectedFeatures();
+        String configuration = getRewriteConfiguration(selectedFeatures);
+        // shared by all features files of the execution, and the versions by all executions of the build
+        PropertyResolver propertyResolver = newPropertyResolver();
+        VersionNormalizer versionNormalizer = getSessionCache().versionNormalizer();
+        IncrementalState state = null;
+        if (incremental) {
+            try {
+                state = new IncrementalState(incrementalStateFile.toPath());
+            } catch (IOException e) {
+                getLog().warn(String.format("Unable to read incremental state %s, all features files will be processed: %s", incrementalStateFile, e.getMessage()));
+            }
+        }
+        IncrementalState incrementalState = state;
+
+        ExecutorService executor = newExecutor("features-utils", files.size());
+        try {
+            // files unchanged since the last build are neither inspected nor rewritten
+            List<Path> pending = files;
+            if (incrementalState != null) {
+                pending = new ArrayList<>();
+                Map<Path, Future<Boolean>> upToDateChecks = new LinkedHashMap<>();
+                for (Path file : files) {
+                    upToDateChecks.put(file, executor.submit(() -> incrementalState.isUpToDate(file, configuration, propertyResolver)));
+                }
+                for (Map.Entry<Path, Future<Boolean>> entry : upToDateChecks.entrySet()) {
+                    try {
+                        if (!entry.getValue().get()) {
+                            pending.add(entry.getKey());
                         }
+                    } catch (ExecutionException e) {
+                        pending.add(entry.getKey());
                     }
                 }
-                
-                if (firstIndex == 0) {
-                    getLog().error(String.format("Feature %s not found, no lines will be processed", targetFeature));
-                    return;
-                }
             }
-            modifyLines(lines, firstIndex, lastIndex);
-	        
-	        // Write the modified lines back to the file
-	        Files.write(Paths.get(featuresFilePath), lines);
-	        
-	        getLog().info("File updated successfully.");
-	    } catch (IOException e) {
-	        e.printStackTrace();
-	    }        
-    }
 
-    private void modifyLines(List<String> lines, int firstIndex, int lastIndex) {
+            Map<ArtifactKey, ManifestInfo> manifests = null;
+            if (resolveManifests) {
+                long resolveStart = System.nanoTime();
+                manifests = resolveWrappedArtifacts(pending, selectedFeatures, propertyResolver, executor);
+                report.setResolveNanos(System.nanoTime() - resolveStart);
+            }
+            FeaturesFileRewriter fileRewriter = new FeaturesFileRewriter(
+                    new WrapBundleVersionRewriter(getLog(), propertyResolver, versionNormalizer, getVersionRepairs(), manifests == null ? null : manifests::get, resolutionFailurePolicy, preservePlaceholders, getWrapRules()),
+                    getSessionCache());
+
+            Map<Path, Future<RewriteResult>> futures = new LinkedHashMap<>();
+            for (Path file : pending) {
+                futures.put(file, executor.submit(() -> {
+                    RewriteResult result = fileRewriter.rewrite(file, selectedFeatures);
+                    if (incrementalState != null && result.missingFeatures.isEmpty()) {
+                        incrementalState.update(result, configuration, propertyResolver);
+                    }
+                    return result;
+                }));
+            }
 
-        // Define the pattern with wildcards
-        Pattern wrapPattern = Pattern.compile("^<bundle.*wrap:mvn:.*</bundle>$");
+            for (Path file : files) {
+                if (!futures.containsKey(file)) {
+                    report.addUpToDate(file);
+                }
+            }
+            for (Map.Entry<Path, Future<RewriteResult>> entry : futures.entrySet()) {
+                try {
+                    RewriteResult result = entry.getValue().get();
+                    for (String missingFeature : result.missingFeatures) {
+                        getLog().error(String.format("Feature %s not found in %s, no lines will be processed for it", missingFeature, entry.getKey()));
+                    }
+                    report.add(result);
+                    if (result.written) {
+                        getLog().info(String.format("File %s updated successfully.", entry.getKey()));
+                    }
+                } catch (ExecutionException e) {
+                    // one broken file must not stop the others
+                    report.addFailure(entry.getKey());
+                    getLog().error(String.format("Unable to update features file %s: %s", entry.getKey(), e.getCause().getMessage()));
+                    getLog().debug(e.getCause());
+                }
+            }
 
-        // Edit the lines
-        for (int i = firstIndex; i <= lastIndex; i++) {
-            // Create a Matcher object
-            Matcher matcher = wrapPattern.matcher(lines.get(i).trim());
-            if (matcher.matches()) {
-                lines.set(i, addVersionToWrapProtocol(lines.get(i)));
+            if (incrementalState != null) {
+                try {
+                    incrementalState.save();
+                } catch (IOException e) {
+                    getLog().warn(String.format("Unable to write incremental state %s: %s", incrementalStateFile, e.getMessage()));
+                }
             }
-        }
-    }
 
-	private String addVersionToWrapProtocol(String line) {
-        int versionStartIndex = getVersionFirstIndex(line); 
-		int versionEndIndex = getVersionEndIndex(line, versionStartIndex);
-		
-		String version = getVersion(line, versionStartIndex, versionEndIndex);
-		try {
-		    String resolvedVersion = (version.charAt(0) == '$') ? getPropertyValueFromPom(version) : version;
-		    try {
-		        new Version(resolvedVersion);// test if it will work in the Karaf container!
-		        
-		    } catch (Exception e ) {
-		        // TODO: only use cleanVersion if the artifact is non-osgi
-		        
-		        String cleanVersion = org.apache.felix.utils.version.VersionCleaner.clean(resolvedVersion);
-		        try {
-		            new Version(cleanVersion);// test if it will work in the Karaf container again!
-		            // WARN: placeholder for version will be removed here
-		            String messagePlaceholder = (version.charAt(0) == '$') ? ". Placeholder from artifact version was replaced with value from clean function" : ".";
-		            String message = String.format("Line '%s' was set with Bundle-Version '%s', the output of org.apache.felix.utils.version.VersionCleaner.clean(%s)%s", line, cleanVersion, resolvedVersion, messagePlaceholder);
-		            getLog().warn(message);
-		            
-		            version = cleanVersion;
-		        } catch (Exception e2 ) {
-		            String message = String.format("Line '%s' was ignored because '%s' is not a valid OSGi Version: %s", line, cleanVersion, e.getMessage());
-		            getLog().warn(message);      
-		            return line;		            
-		        }		        
-		    }		    
-		} catch (Exception e ) {
-		    StringWriter sw = new StringWriter();
-		    PrintWriter pw = new PrintWriter(sw);
-		    e.printStackTrace(pw);
-		    String sStackTrace = sw.toString(); // stack trace as a string
-		    String message = String.format("Line '%s' was ignored because it wasn't possible to read value of placeholder '%s' from '%s': %s", line, clearPlaceHolderChars(version), project, sStackTrace);
-		    getLog().error(message);      
-            return line;   
-		}
-		
-		String bundleVersionOsgiHeader = String.format("Bundle-Version=%s", version);
-		
-		if (line.contains(bundleVersionOsgiHeader)) {
-		    return line;
-		}
-		
-		if(line.contains("Bundle-Version=")) {
-            return replaceWrongVersion(line, bundleVersionOsgiHeader);
-		}
-		
-		StringBuilder sb = new StringBuilder(line);
-		for(String osgiHeader : OSGI_HEADERS_AFTER_BUNDLE_VEIRSION) {
-			// add Bundle-Version before
-			if(line.contains(osgiHeader)) {
-				int insertIndex = line.indexOf(osgiHeader);
-				return sb.insert(insertIndex, String.format("%s&amp;", bundleVersionOsgiHeader)).toString();
-			}
-		}
-		
-		int endIndex = getWrapLastCharIndex(line);
-		// add + 1, ignroe last version char and 
-		String wrapOsgiDeclaration = line.substring(versionEndIndex+1, endIndex+1);
-		
-		if(wrapOsgiDeclaration.contains("$")) {
-			return sb.insert(endIndex + 1, String.format("&amp;%s", bundleVersionOsgiHeader)).toString();
-		} else {
-			return sb.insert(endIndex + 1, String.format("$%s", bundleVersionOsgiHeader)).toString();
-		}
+            writeReport(report);
+            if (!report.failures().isEmpty()) {
+                throw new MojoExecutionException(String.format("Unable to update features files %s", report.failures()));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Interrupted while updating features files", e);
+        } finally {
+            executor.shutdownNow();
+        }
     }
 
     static String replaceWrongVersion(String line, String bundleVersionOsgiHeader) {
@@ -204,11 +163,10 @@ public class FeaturesUtilsMojo extends AbstractMojo {
     }
         	
 	static int getBundleVersionHeaderLastCharIndex(String line, int insertIndex) {
-	    char[] chars = line.toCharArray();
 	    
 	    boolean versionPlaceHolderFound = false;
 	    for(int i = insertIndex; i<line.length(); i++) {
-	        if(chars[i] == '$') {
+	        if(line.charAt(i) == '$') {
 	            if(!versionPlaceHolderFound) {
 	                versionPlaceHolderFound = !versionPlaceHolderFound;
 	            } else {
@@ -217,7 +175,7 @@ public class FeaturesUtilsMojo extends AbstractMojo {
 	            
 	        }
 	        
-	        if (chars[i] == '<' || chars[i] == '&') {// last one probably not needed
+	        if (line.charAt(i) == '<' || line.charAt(i) == '&') {// last one probably not needed
 	            return i-1;
 	        }
 	    }
@@ -226,10 +184,9 @@ public class FeaturesUtilsMojo extends AbstractMojo {
     }
 
     static int getWrapLastCharIndex(String line) {
-		char[] chars = line.toCharArray();
 		
 		for(int i = line.length()-1; i>0; i--) {
-			if (chars[i] == '<') {
+			if (line.charAt(i) == '<') {
 				return i-1;
 			}
 		}
@@ -250,15 +207,14 @@ public class FeaturesUtilsMojo extends AbstractMojo {
 	}
 	
 	static int getVersionEndIndex(String line, int versionStartIndex) {
-		char[] chars = line.toCharArray();
 		
 		// start at versionStartIndex + 1 to ignore the $ in version placeholder use case
-		for(int i = versionStartIndex+1; i< chars.length; i++) {
-		    if('}' == chars[i]) {
+		for(int i = versionStartIndex+1; i< line.length(); i++) {
+		    if('}' == line.charAt(i)) {
 		        return i;
 		    }
 		    
-			if('$' == chars[i] || '<' == chars[i]) {
+			if('$' == line.charAt(i) || '<' == line.charAt(i)) {
 				return i-1;
 			}
 		}
@@ -267,11 +223,10 @@ public class FeaturesUtilsMojo extends AbstractMojo {
 	}
 
 	static int getVersionFirstIndex(String line) {
-		char[] chars = line.toCharArray();
 		
 		boolean iteratedOverGroupId = false;
-		for(int i = 0; i< chars.length; i++) {
-			if('/' == chars[i]) {
+		for(int i = 0; i< line.length(); i++) {
+			if('/' == line.charAt(i)) {
 				if(!iteratedOverGroupId) {
 					iteratedOverGroupId = true;
 				} else {
@@ -282,67 +237,4 @@ public class FeaturesUtilsMojo extends AbstractMojo {
 		
 		return -1;
 	}
-	
-	private String getPropertyValueFromPom(String placeholder) throws Exception {
-        // Extract the property name from the placeholder
-        String propertyName = clearPlaceHolderChars(placeholder);
-
-        String propertyValue = project.getProperties().getProperty(propertyName);
-        
-        if (propertyValue != null) {
-            return propertyValue;
-        } else {
-            throw new Exception(String.format("Property <%s> not found in pom.xml", propertyName));
-        }
-    }
-
-    private String clearPlaceHolderChars(String placeholder) {
-        return placeholder.substring(2, placeholder.length() - 1);
-    }
-/*
-    public String getBundleVersionFromManifest(String line) throws IOException {
-        
-        try (JarFile jarFile = new JarFile(downloadJarFile(artifactUrl))) {
-            Manifest manifest = jarFile.getManifest();
-            if (manifest != null) {
-                String bundleVersion = manifest.getMainAttributes().getValue("Bundle-Version");
-                if (bundleVersion != null) {
-                    System.out.println("Artifact is an OSGi bundle.");
-                    // You can further inspect the Manifest for other OSGi-specific headers
-                } else {
-                    System.out.println("Artifact is not an OSGi bundle.");
-                }
-            } else {
-                System.out.println("Manifest file not found. Cannot determine if the artifact is an OSGi bundle.");
-            }
-        }
-        
-        return null;
-    }
-
-    public static InputStream downloadJarFile(String artifactUrl) throws IOException {
-        URL url = new URL(artifactUrl);
-        return url.openStream();
-    }
-    private static RepositorySystem newRepositorySystem() {
-        DefaultServiceLocator locator = MavenRepositorySystemUtils.newServiceLocator();
-        locator.setErrorHandler(new ErrorHandler() {
-            public void serviceCreationFailed(Class<?> type, Class<?> impl, Throwable ex) {
-                throw new IllegalStateException(ex);
-            }
-        });
-        return locator.getService(RepositorySystem.class);
-    }
-
-    private static RepositorySystemSession newSession(RepositorySystem system) {
-        DefaultRepositorySystemSession session = MavenRepositorySystemUtils.newSession();
-
-        // Set up the repositories from the Maven settings
-        for (Repository repository : MavenRepositorySystemUtils.loadSettings().getRepositories()) {
-            RemoteRepository.Builder builder = new RemoteRepository.Builder(repository.getId(), "default", repository.getUrl());
-            remoteRepos.add(builder.build());
-        }
-
-        return session;
-    } */
 }
\ No newline at end of file
@@ -0,0 +1,201 @@
+package feature.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * Rewrites a single source features file once per configured {@link Distribution}, each with its own properties, into
+ * {@code <distributionsDirectory>/<name>/}, along with the patch taking the source to the distribution.
+ * <p>
+ * The source is read, indexed and parsed once, the distributions are then rewritten concurrently from the shared
+ * model. The versions are validated once for all of them and, with {@code resolveManifests}, the manifests of the
+ * artifacts of all the distributions are resolved in a single pass.
+ * <p>
+ * The {@code Bundle-Version} headers get the values of the version placeholders, the placeholders of the artifact urls
+ * are replaced by their value when a distribution overrides them.
+ */
+@Mojo(name = "generate-distribution-features", defaultPhase = LifecyclePhase.GENERATE_RESOURCES)
+public class GenerateDistributionFeaturesMojo extends AbstractFeaturesMojo {
+
+    /**
+     * The distributions to generate, see {@link Distribution}.
+     */
+    @Parameter(required = true)
+    private List<Distribution> distributions;
+
+    @Parameter(property = "featuresUtils.distributionsDirectory", defaultValue = "${project.build.directory}/feature-utils/distributions", required = false)
+    private File distributionsDirectory;
+
+    /**
+     * Write {@code <distributionsDirectory>/<name>.patch}, the edits of the distribution as a unified diff of the source.
+     */
+    @Parameter(property = "featuresUtils.writePatches", defaultValue = "true", required = false)
+    private boolean writePatches;
+
+    /**
+     * Keep the version placeholders in the {@code Bundle-Version} headers rather than their value, this goal ignores
+     * {@code preservePlaceholders}. The placeholders of the artifact urls resolving differently with the properties of
+     * a distribution are always replaced by their value.
+     */
+    @Parameter(property = "featuresUtils.preserveDistributionPlaceholders", defaultValue = "false", required = false)
+    private boolean preserveDistributionPlaceholders;
+
+    @Override
+    public void execute() throws MojoExecutionException {
+        List<Path> files = collectFeaturesFiles();
+        if (files.size() != 1) {
+            throw new MojoExecutionException(String.format("generate-distribution-features needs a single source features file, %d configured", files.size()));
+        }
+        Path source = files.get(0);
+        Set<String> names = new HashSet<>();
+        for (Distribution distribution : distributions) {
+            String problem = distribution.validate();
+            if (problem != null) {
+                throw new MojoExecutionException(String.format("Invalid distribution %s: %s", distribution, problem));
+            }
+            if (!names.add(distribution.name())) {
+                throw new MojoExecutionException(String.format("Distribution %s is configured more than once", distribution.name()));
+            }
+        }
+
+        FeaturesModel model;
+        try {
+            model = FeaturesFileRewriter.parse(source, getSelectedFeatures(), getSessionCache());
+        } catch (IOException e) {
+            throw new MojoExecutionException(String.format("Unable to read features file %s: %s", source, e.getMessage()), e);
+        }
+        for (String missingFeature : model.missingFeatures) {
+            getLog().error(String.format("Feature %s not found in %s, no lines will be processed for it", missingFeature, source));
+        }
+        getLog().info(String.format("Parsed %d wrap bundles of %s in %d ms", model.elements.size(), source,
+                TimeUnit.NANOSECONDS.toMillis(model.indexNanos + model.readNanos)));
+
+        ExecutionReport report = new ExecutionReport("generate-distribution-features", project.getId());
+        // the versions are validated and repaired once for all the distributions
+        VersionNormalizer versionNormalizer = getSessionCache().versionNormalizer();
+        VersionRepairs versionRepairs = getVersionRepairs();
+        List<WrapRule> wrapRules = getWrapRules();
+        PropertyResolver projectProperties = newPropertyResolver();
+        Map<Distribution, PropertyResolver> propertyResolvers = new LinkedHashMap<>();
+        for (Distribution distribution : distributions) {
+            propertyResolvers.put(distribution, newPropertyResolver(distribution.properties()));
+        }
+
+        ExecutorService executor = newExecutor("features-utils-distributions", distributions.size());
+        try {
+            Function<ArtifactKey, ManifestInfo> manifests = null;
+            if (resolveManifests) {
+                long resolveStart = System.nanoTime();
+                manifests = resolveManifests(wrappedArtifacts(model, propertyResolvers))::get;
+                report.setResolveNanos(System.nanoTime() - resolveStart);
+            }
+
+            Map<Distribution, Future<RewriteResult>> futures = new LinkedHashMap<>();
+            for (Map.Entry<Distribution, PropertyResolver> entry : propertyResolvers.entrySet()) {
+                WrapBundleVersionRewriter rewriter = new WrapBundleVersionRewriter(getLog(), entry.getValue(), versionNormalizer, versionRepairs,
+                        manifests, resolutionFailurePolicy, preserveDistributionPlaceholders, wrapRules);
+                rewriter.resolveUrlPlaceholders(projectProperties);
+                FeaturesFileRewriter fileRewriter = new FeaturesFileRewriter(rewriter, getSessionCache());
+                Path target = outputFile(entry.getKey(), source);
+                futures.put(entry.getKey(), executor.submit(() -> fileRewriter.rewrite(model, target)));
+            }
+
+            for (Map.Entry<Distribution, Future<RewriteResult>> entry : futures.entrySet()) {
+                Distribution distribution = entry.getKey();
+                try {
+                    RewriteResult result = entry.getValue().get();
+                    report.add(result);
+                    if (result.written) {
+                        getLog().info(String.format("Distribution %s written to %s with %d edits.", distribution.name(), result.featuresFile, result.edits.size()));
+                    }
+                    if (writePatches) {
+                        writePatch(distribution, model, result);
+                    }
+                } catch (ExecutionException e) {
+                    report.addFailure(outputFile(distribution, source));
+                    getLog().error(String.format("Unable to generate distribution %s: %s", distribution.name(), e.getCause().getMessage()));
+                    getLog().debug(e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Interrupted while generating distributions", e);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        writeReport(report);
+        if (!report.failures().isEmpty()) {
+            throw new MojoExecutionException(String.format("Unable to generate distributions %s", report.failures()));
+        }
+    }
+
+    /**
+     * @return the artifacts wrapped by the parsed file with the properties of any of the distributions
+     */
+    private static Set<ArtifactKey> wrappedArtifacts(FeaturesModel model, Map<Distribution, PropertyResolver> propertyResolvers) {
+        Set<ArtifactKey> artifacts = new HashSet<>();
+        for (PropertyResolver propertyResolver : propertyResolvers.values()) {
+            WrapBundleVersionRewriter collector = new WrapBundleVersionRewriter(null, propertyResolver, null, null, null, null, true, null);
+            for (FeaturesModel.WrapElement element : model.elements) {
+                ArtifactKey artifact = collector.artifactKey(element.url);
+                if (artifact != null) {
+                    artifacts.add(artifact);
+                }
+            }
+        }
+        return artifacts;
+    }
+
+    private Path outputFile(Distribution distribution, Path source) {
+        if (distribution.outputFile() != null) {
+            return distribution.outputFile().toPath().toAbsolutePath().normalize();
+        }
+        return distributionsDirectory.toPath().resolve(distribution.name()).resolve(source.getFileName()).toAbsolutePath().normalize();
+    }
+
+    /**
+     * Writes the patch of the distribution, applying with {@code patch -p1} from the project directory, or deletes the
+     * one of a previous build if the distribution doesn't change the source.
+     */
+    private void writePatch(Distribution distribution, FeaturesModel model, RewriteResult result) {
+        Path patchFile = distributionsDirectory.toPath().resolve(distribution.name() + ".patch");
+        try {
+            if (result.edits.isEmpty()) {
+                Files.deleteIfExists(patchFile);
+                return;
+            }
+            Path source = model.featuresFile;
+            Path basedir = project.getBasedir().toPath().toAbsolutePath().normalize();
+            String path = (source.startsWith(basedir) ? basedir.relativize(source) : source).toString().replace(File.separatorChar, '/');
+            StringBuilder patch = new StringBuilder();
+            UnifiedDiff.write(patch, path.startsWith("/") ? path.substring(1) : path, new ByteArrayInputStream(model.content), result.edits);
+            Files.createDirectories(patchFile.toAbsolutePath().getParent());
+            try (Writer out = Files.newBufferedWriter(patchFile, StandardCharsets.UTF_8)) {
+                out.append(patch);
+            }
+        } catch (IOException e) {
+            getLog().warn(String.format("Unable to write patch %s: %s", patchFile, e.getMessage()));
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,135 @@
+package feature.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * State of the incremental mode, stored as a properties file under {@code target/}.
+ * <p>
+ * For every processed features file it keeps the hash of the file content after the last rewrite
+ * and the hash of the interpolated properties its placeholders were resolved through, along with the
+ * {@link #configuration(Object...) configuration} of the rewrite. A file whose content and properties hash
+ * both still match doesn't need to be processed again.
+ */
+class IncrementalState {
+
+    private static final String CONTENT = ".content";
+    private static final String PROPERTIES = ".properties";
+    private static final String PROPERTY_NAMES = ".propertyNames";
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final Path stateFile;
+    private final Properties state = new Properties();
+
+    IncrementalState(Path stateFile) throws IOException {
+        this.stateFile = stateFile;
+        if (Files.isRegularFile(stateFile)) {
+            try (InputStream in = Files.newInputStream(stateFile)) {
+                state.load(in);
+            }
+        }
+    }
+
+    /**
+     * @param values the plugin version and the parameters that affect the rewrite, e.g. the target features or the wrap
+     *               rules, which are described by their {@code toString()}
+     * @return the configuration to pass to {@link #isUpToDate} and {@link #update}
+     */
+    static String configuration(Object... values) {
+        StringBuilder configuration = new StringBuilder();
+        for (Object value : values) {
+            configuration.append(value).append('\n');
+        }
+        return configuration.toString();
+    }
+
+    /**
+     * @param configuration the plugin configuration that affects the rewrite, e.g. the target feature
+     * @return {@code true} if neither the file nor the properties it depends on changed since the last rewrite
+     */
+    boolean isUpToDate(Path featuresFile, String configuration, PropertyResolver properties) throws IOException {
+        String key = featuresFile.toString();
+        String contentHash = state.getProperty(key + CONTENT);
+        String propertiesHash = state.getProperty(key + PROPERTIES);
+        if (contentHash == null || propertiesHash == null) {
+            return false;
+        }
+
+        Set<String> propertyNames = new TreeSet<>();
+        for (String propertyName : state.getProperty(key + PROPERTY_NAMES, "").split(",")) {
+            if (!propertyName.isEmpty()) {
+                propertyNames.add(propertyName);
+            }
+        }
+        return propertiesHash.equals(hashProperties(propertyNames, configuration, properties))
+                && contentHash.equals(hashContent(featuresFile));
+    }
+
+    synchronized void update(RewriteResult result, String configuration, PropertyResolver properties) {
+        String key = result.featuresFile.toString();
+        state.setProperty(key + CONTENT, result.contentHash);
+        state.setProperty(key + PROPERTIES, hashProperties(result.resolvedProperties, configuration, properties));
+        state.setProperty(key + PROPERTY_NAMES, String.join(",", result.resolvedProperties));
+    }
+
+    synchronized void save() throws IOException {
+        Files.createDirectories(stateFile.toAbsolutePath().getParent());
+        try (OutputStream out = Files.newOutputStream(stateFile)) {
+            state.store(out, "feature-utils incremental state");
+        }
+    }
+
+    static String hashProperties(Set<String> propertyNames, String configuration, PropertyResolver properties) {
+        MessageDigest digest = newDigest();
+        digest.update(String.valueOf(configuration).getBytes(StandardCharsets.UTF_8));
+        for (String propertyName : propertyNames) {
+            digest.update((byte) '\n');
+            digest.update(propertyName.getBytes(StandardCharsets.UTF_8));
+            String value = properties.resolve(propertyName);
+            if (value != null) {
+                digest.update((byte) '=');
+                digest.update(value.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    static String hashContent(Path file) throws IOException {
+        MessageDigest digest = newDigest();
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every JRE has to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[2 * i] = HEX[(bytes[i] >> 4) & 0xF];
+            chars[2 * i + 1] = HEX[bytes[i] & 0xF];
+        }
+        return new String(chars);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,23 @@
+package feature.utils;
+
+/**
+ * Edit a rewrite would make to a single line of a features file, without its line terminator.
+ */
+final class LineEdit {
+
+    /** 1-based number of the line in the file */
+    final long lineNumber;
+    final String oldLine;
+    final String newLine;
+
+    LineEdit(long lineNumber, String oldLine, String newLine) {
+        this.lineNumber = lineNumber;
+        this.oldLine = oldLine;
+        this.newLine = newLine;
+    }
+
+    @Override
+    public String toString() {
+        return lineNumber + ": " + oldLine.trim() + " -> " + newLine.trim();
+    }
+}
\ No newline at end of file
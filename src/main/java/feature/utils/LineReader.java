@@ -0,0 +1,124 @@
+package feature.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Reads an input stream line by line through a reusable byte buffer. Line terminators are kept
+ * as part of the line so the original bytes can be copied through unchanged.
+ * <p>
+ * Lines aren't copied: the current line is a slice of the read buffer, from {@link #start()}. Its end is
+ * found eight bytes at a time with {@link ByteSearch}. A line running past the end of the buffer is moved
+ * to its beginning before the next read, and the buffer only grows for a line longer than itself.
+ */
+final class LineReader {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final InputStream in;
+    private byte[] buffer;
+    private int position;
+    private int limit;
+    private boolean endOfStream;
+
+    private int start;
+    private int length;
+    private int contentLength;
+    private long offset;
+    private long nextOffset;
+
+    LineReader(InputStream in) {
+        this(in, BUFFER_SIZE);
+    }
+
+    LineReader(InputStream in, int bufferSize) {
+        this.in = in;
+        this.buffer = new byte[bufferSize];
+    }
+
+    /**
+     * @return {@code false} when the end of the stream has been reached
+     */
+    boolean next() throws IOException {
+        offset = nextOffset;
+        int searchFrom = position;
+        int end;
+        while (true) {
+            int newline = ByteSearch.indexOf(buffer, searchFrom, limit, (byte) '\n');
+            if (newline >= 0) {
+                end = newline + 1;
+                break;
+            }
+            if (endOfStream) {
+                end = limit;
+                break;
+            }
+            searchFrom = fill();
+        }
+        start = position;
+        length = end - start;
+        position = end;
+        if (length == 0) {
+            return false;
+        }
+        nextOffset += length;
+
+        contentLength = length;
+        if (buffer[start + contentLength - 1] == '\n') {
+            contentLength--;
+            if (contentLength > 0 && buffer[start + contentLength - 1] == '\r') {
+                contentLength--;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Keeps the partial line at the beginning of the buffer and reads after it.
+     *
+     * @return the index the search of the line end resumes from
+     */
+    private int fill() throws IOException {
+        int partial = limit - position;
+        if (position > 0) {
+            System.arraycopy(buffer, position, buffer, 0, partial);
+        } else if (partial == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        position = 0;
+        limit = partial;
+        int read = in.read(buffer, limit, buffer.length - limit);
+        if (read < 0) {
+            endOfStream = true;
+        } else {
+            limit += read;
+        }
+        return partial;
+    }
+
+    /** @return the buffer holding the current line, from {@link #start()} up to {@link #length()} bytes */
+    byte[] bytes() {
+        return buffer;
+    }
+
+    /** @return the index of the current line in {@link #bytes()} */
+    int start() {
+        return start;
+    }
+
+    /** @return the length of the current line including its terminator */
+    int length() {
+        return length;
+    }
+
+    /** @return the length of the current line without its terminator */
+    int contentLength() {
+        return contentLength;
+    }
+
+    /** @return the offset of the current line from the beginning of the stream */
+    long offset() {
+        return offset;
+    }
+}
\ No newline at end of file
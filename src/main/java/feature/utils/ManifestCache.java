@@ -0,0 +1,152 @@
+package feature.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+
+/**
+ * On disk cache of the manifest headers of wrapped artifacts, keyed by the SHA-1 checksum of the jar.
+ * <p>
+ * The checksum is taken from the {@code .sha1} file maven keeps next to downloaded artifacts. For jars
+ * without it the checksum is computed once and remembered along with the size and modification time of
+ * the jar, so a jar is never opened again as long as it doesn't change.
+ */
+class ManifestCache {
+
+    private static final String CHECKSUM = "sha1.";
+    private static final String FILE = "file.";
+    private static final String SEPARATOR = "|";
+
+    private final Path cacheFile;
+    private final Properties cache = new Properties();
+    private boolean modified;
+
+    ManifestCache(Path cacheFile) throws IOException {
+        this.cacheFile = cacheFile;
+        if (Files.isRegularFile(cacheFile)) {
+            try (InputStream in = Files.newInputStream(cacheFile)) {
+                cache.load(in);
+            }
+        }
+    }
+
+    /**
+     * @return the cached manifest headers, {@code null} if the jar wasn't inspected yet
+     */
+    synchronized ManifestInfo get(String checksum) {
+        String value = cache.getProperty(CHECKSUM + checksum);
+        if (value == null) {
+            return null;
+        }
+        String[] headers = value.split("\\|", -1);
+        if (headers.length < 3) {
+            // cached by an older version of the plugin, the jar is inspected again
+            return null;
+        }
+        return new ManifestInfo(emptyToNull(headers[0]), emptyToNull(headers[1]), emptyToNull(headers[2]));
+    }
+
+    synchronized void put(String checksum, ManifestInfo manifest) {
+        cache.setProperty(CHECKSUM + checksum, nullToEmpty(manifest.symbolicName) + SEPARATOR + nullToEmpty(manifest.bundleVersion)
+                + SEPARATOR + nullToEmpty(manifest.implementationVersion));
+        modified = true;
+    }
+
+    /**
+     * Writes the cache to a temporary file moved over the cache file, atomically when the file system supports it, so
+     * that the builds sharing the local repository never read a partly written cache. The entries written by another
+     * build since this cache was read are kept.
+     */
+    synchronized void save() throws IOException {
+        if (!modified) {
+            return;
+        }
+        Path directory = cacheFile.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        if (Files.isRegularFile(cacheFile)) {
+            Properties saved = new Properties();
+            try (InputStream in = Files.newInputStream(cacheFile)) {
+                saved.load(in);
+            }
+            for (String key : saved.stringPropertyNames()) {
+                cache.putIfAbsent(key, saved.getProperty(key));
+            }
+        }
+        Path tempFile = Files.createTempFile(directory, cacheFile.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(tempFile)) {
+                cache.store(out, "feature-utils manifest cache");
+            }
+            try {
+                Files.move(tempFile, cacheFile, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, cacheFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+        modified = false;
+    }
+
+    /**
+     * @return the SHA-1 checksum of the given jar
+     */
+    String checksum(Path jar) throws IOException {
+        Path sha1File = jar.resolveSibling(jar.getFileName() + ".sha1");
+        if (Files.isRegularFile(sha1File)) {
+            String sha1 = new String(Files.readAllBytes(sha1File), StandardCharsets.US_ASCII).trim();
+            int end = sha1.indexOf(' ');
+            return end > 0 ? sha1.substring(0, end) : sha1;
+        }
+
+        String fileKey = FILE + jar.toAbsolutePath();
+        String stat = Files.size(jar) + SEPARATOR + Files.getLastModifiedTime(jar).toMillis() + SEPARATOR;
+        synchronized (this) {
+            String known = cache.getProperty(fileKey);
+            if (known != null && known.startsWith(stat)) {
+                return known.substring(stat.length());
+            }
+        }
+
+        String sha1 = sha1(jar);
+        synchronized (this) {
+            cache.setProperty(fileKey, stat + sha1);
+            modified = true;
+        }
+        return sha1;
+    }
+
+    private static String sha1(Path jar) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            // every JRE has to support SHA-1
+            throw new IllegalStateException(e);
+        }
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(jar)) {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return IncrementalState.toHex(digest.digest());
+    }
+
+    private static String emptyToNull(String value) {
+        return value.isEmpty() ? null : value;
+    }
+
+    private static String nullToEmpty(String value) {
+        return value == null ? "" : value;
+    }
+}
\ No newline at end of file
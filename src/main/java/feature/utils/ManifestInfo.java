@@ -0,0 +1,26 @@
+package feature.utils;
+
+/**
+ * OSGi relevant headers read from the MANIFEST.MF of a wrapped artifact.
+ */
+final class ManifestInfo {
+
+    static final ManifestInfo NO_MANIFEST = new ManifestInfo(null, null, null);
+
+    final String symbolicName;
+    final String bundleVersion;
+    final String implementationVersion;
+
+    ManifestInfo(String symbolicName, String bundleVersion, String implementationVersion) {
+        this.symbolicName = symbolicName;
+        this.bundleVersion = bundleVersion;
+        this.implementationVersion = implementationVersion;
+    }
+
+    /**
+     * @return {@code true} if the artifact is already an OSGi bundle and doesn't need to be wrapped
+     */
+    boolean isBundle() {
+        return symbolicName != null;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,271 @@
+package feature.utils;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.model.Build;
+import org.apache.maven.project.MavenProject;
+
+/**
+ * Table of fully interpolated properties, built once per execution.
+ * <p>
+ * Every property referencing other properties, e.g. {@code a=${b}.1}, is interpolated when the table is
+ * built, so resolving a placeholder is a single map lookup. Properties that reference an undefined property
+ * or take part in a cycle are left out of the table, the reason is kept to be reported with the placeholders
+ * using them. The table is immutable and can be shared by threads.
+ * <p>
+ * A table can be layered on top of a parent one: its own properties take precedence and may reference the
+ * parent ones. The properties that are the same for all the modules of a build are interpolated once in a
+ * shared parent table, each module only adds its {@code project.*} values.
+ */
+final class PropertyResolver {
+
+    private static final String PLACEHOLDER_START = "${";
+    private static final char PLACEHOLDER_END = '}';
+
+    private final PropertyResolver parent;
+    private final Map<String, String> values;
+    /** property name to the reason it can't be resolved */
+    private final Map<String, String> problems;
+
+    /**
+     * @param properties raw property values, they may reference each other
+     */
+    PropertyResolver(Properties properties) {
+        this(null, toMap(properties));
+    }
+
+    /**
+     * @param parent resolves the properties that aren't part of the given ones, may be {@code null}
+     * @param raw raw property values, they may reference each other and the parent properties
+     */
+    PropertyResolver(PropertyResolver parent, Map<String, String> raw) {
+        this.parent = parent;
+        this.values = new HashMap<>(raw.size() * 4 / 3 + 1);
+        this.problems = new HashMap<>();
+        Deque<String> path = new ArrayDeque<>();
+        for (String name : raw.keySet()) {
+            interpolate(name, raw, path);
+        }
+    }
+
+    /**
+     * Builds the table of the properties Maven interpolates a pom with, from the lowest to the highest precedence:
+     * system properties and environment variables ({@code env.*}), {@code settings.localRepository}, the
+     * properties of the effective model (parents and active profiles included), the user properties given
+     * with {@code -D} and the {@code project.*} model values.
+     * <p>
+     * Maven already interpolated the {@code project.*} references of the model properties, the ones of system
+     * and user properties aren't resolved.
+     *
+     * @param cache shares the table of the properties that don't depend on the module, may be {@code null}
+     */
+    static PropertyResolver of(MavenProject project, MavenSession session, SessionCache cache) {
+        return of(project, session, cache, Collections.emptyMap());
+    }
+
+    /**
+     * Variant of {@link #of(MavenProject, MavenSession, SessionCache)} overriding the properties of the effective model
+     * with the given ones, e.g. the versions of a distribution. The properties of the model referencing an overridden
+     * one are interpolated with its new value, the user properties still take precedence.
+     */
+    static PropertyResolver of(MavenProject project, MavenSession session, SessionCache cache, Map<String, String> overrides) {
+        Properties shared = new Properties();
+        if (session != null) {
+            shared.putAll(session.getSystemProperties());
+            if (session.getLocalRepository() != null) {
+                shared.setProperty("settings.localRepository", session.getLocalRepository().getBasedir());
+            }
+        }
+        shared.putAll(project.getProperties());
+        shared.putAll(overrides);
+        if (session != null) {
+            shared.putAll(session.getUserProperties());
+        }
+        Map<String, String> sharedProperties = toMap(shared);
+        PropertyResolver sharedTable = cache != null ? cache.propertyTable(sharedProperties) : new PropertyResolver(null, sharedProperties);
+
+        Properties properties = new Properties();
+        putIfNotNull(properties, "project.groupId", project.getGroupId());
+        putIfNotNull(properties, "project.artifactId", project.getArtifactId());
+        putIfNotNull(properties, "project.version", project.getVersion());
+        putIfNotNull(properties, "project.name", project.getName());
+        putIfNotNull(properties, "project.packaging", project.getPackaging());
+        if (project.getBasedir() != null) {
+            properties.setProperty("project.basedir", project.getBasedir().getAbsolutePath());
+            properties.setProperty("basedir", project.getBasedir().getAbsolutePath());
+        }
+        Build build = project.getBuild();
+        if (build != null) {
+            putIfNotNull(properties, "project.build.directory", build.getDirectory());
+            putIfNotNull(properties, "project.build.outputDirectory", build.getOutputDirectory());
+            putIfNotNull(properties, "project.build.finalName", build.getFinalName());
+        }
+        if (project.getParent() != null) {
+            putIfNotNull(properties, "project.parent.groupId", project.getParent().getGroupId());
+            putIfNotNull(properties, "project.parent.artifactId", project.getParent().getArtifactId());
+            putIfNotNull(properties, "project.parent.version", project.getParent().getVersion());
+        }
+        return new PropertyResolver(sharedTable, toMap(properties));
+    }
+
+    private static Map<String, String> toMap(Properties properties) {
+        Map<String, String> map = new HashMap<>();
+        for (String name : properties.stringPropertyNames()) {
+            map.put(name, properties.getProperty(name));
+        }
+        return map;
+    }
+
+    private static void putIfNotNull(Properties properties, String name, String value) {
+        if (value != null) {
+            properties.setProperty(name, value);
+        }
+    }
+
+    private String interpolate(String name, Map<String, String> raw, Deque<String> path) {
+        String value = values.get(name);
+        if (value != null || problems.containsKey(name)) {
+            return value;
+        }
+        String rawValue = raw.get(name);
+        if (rawValue == null && parent != null) {
+            return parent.resolve(name);
+        }
+        if (rawValue == null) {
+            problems.put(name, String.format("property <%s> is not defined", name));
+            return null;
+        }
+        if (path.contains(name)) {
+            StringBuilder cycle = new StringBuilder();
+            boolean inCycle = false;
+            for (Iterator<String> elements = path.descendingIterator(); elements.hasNext();) {
+                String element = elements.next();
+                inCycle |= element.equals(name);
+                if (inCycle) {
+                    cycle.append(element).append(" -> ");
+                }
+            }
+            problems.put(name, String.format("property <%s> references itself through %s%s", name, cycle, name));
+            return null;
+        }
+
+        path.push(name);
+        try {
+            StringBuilder sb = null;
+            int from = 0;
+            int start;
+            while ((start = rawValue.indexOf(PLACEHOLDER_START, from)) >= 0) {
+                int end = rawValue.indexOf(PLACEHOLDER_END, start + PLACEHOLDER_START.length());
+                if (end < 0) {
+                    break;
+                }
+                String reference = rawValue.substring(start + PLACEHOLDER_START.length(), end);
+                String referenceValue = interpolate(reference, raw, path);
+                if (referenceValue == null) {
+                    if (!problems.containsKey(name)) {
+                        problems.put(name, problemOf(reference));
+                    }
+                    return null;
+                }
+                if (sb == null) {
+                    sb = new StringBuilder(rawValue.length() + referenceValue.length());
+                }
+                sb.append(rawValue, from, start).append(referenceValue);
+                from = end + 1;
+            }
+            value = sb == null ? rawValue : sb.append(rawValue, from, rawValue.length()).toString();
+            values.put(name, value);
+            return value;
+        } finally {
+            path.pop();
+        }
+    }
+
+    /**
+     * @return the interpolated value of the property, {@code null} if it isn't defined or can't be interpolated
+     */
+    String resolve(String propertyName) {
+        String value = values.get(propertyName);
+        return value != null || parent == null ? value : parent.resolve(propertyName);
+    }
+
+    private String problemOf(String propertyName) {
+        String problem = problems.get(propertyName);
+        if (problem == null && parent != null) {
+            problem = parent.problemOf(propertyName);
+        }
+        return problem != null ? problem : String.format("property <%s> is not defined", propertyName);
+    }
+
+    /**
+     * Resolves all the placeholders of the given text, e.g. {@code ${major}.${minor}.1}.
+     *
+     * @param propertyNames collects the names of the referenced properties, may be {@code null}
+     * @return the interpolated text, {@code null} if one of its placeholders can't be resolved
+     */
+    String interpolate(String text, Set<String> propertyNames) {
+        StringBuilder sb = null;
+        int from = 0;
+        int start;
+        while ((start = text.indexOf(PLACEHOLDER_START, from)) >= 0) {
+            int end = text.indexOf(PLACEHOLDER_END, start + PLACEHOLDER_START.length());
+            if (end < 0) {
+                break;
+            }
+            String name = text.substring(start + PLACEHOLDER_START.length(), end);
+            if (propertyNames != null) {
+                propertyNames.add(name);
+            }
+            String value = resolve(name);
+            if (value == null) {
+                return null;
+            }
+            if (sb == null) {
+                sb = new StringBuilder(text.length() + value.length());
+            }
+            sb.append(text, from, start).append(value);
+            from = end + 1;
+        }
+        return sb == null ? text : sb.append(text, from, text.length()).toString();
+    }
+
+    /**
+     * @return why the first unresolvable placeholder of the given text can't be resolved, {@code null} if they all can
+     */
+    String problem(String text) {
+        int from = 0;
+        int start;
+        while ((start = text.indexOf(PLACEHOLDER_START, from)) >= 0) {
+            int end = text.indexOf(PLACEHOLDER_END, start + PLACEHOLDER_START.length());
+            if (end < 0) {
+                break;
+            }
+            String name = text.substring(start + PLACEHOLDER_START.length(), end);
+            if (resolve(name) == null) {
+                return problemOf(name);
+            }
+            from = end + 1;
+        }
+        return null;
+    }
+
+    /**
+     * @return the names of the properties that can't be resolved and why
+     */
+    Map<String, String> problems() {
+        if (parent == null) {
+            return Collections.unmodifiableMap(problems);
+        }
+        Map<String, String> all = new HashMap<>(parent.problems());
+        all.putAll(problems);
+        return all;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,49 @@
+package feature.utils;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Outcome of the rewrite of a single features file.
+ */
+class RewriteResult {
+
+    final Path featuresFile;
+    long linesScanned;
+    long linesChanged;
+    long wrapBundles;
+    long headersInserted;
+    long headersReplaced;
+    long headersUnchanged;
+    long versionsCleaned;
+    long invalidVersions;
+    long placeholdersUnresolved;
+    long osgiBundlesSkipped;
+    /** edits made by the configured wrap rules */
+    long ruleEdits;
+    /** wrapped artifact versions aligned on the highest one declared */
+    long versionsAligned;
+    long bytesRead;
+    long bytesWritten;
+    long indexNanos;
+    long readNanos;
+    long matchNanos;
+    long writeNanos;
+    boolean featureFound;
+    /** target feature names or patterns that didn't select any feature */
+    final List<String> missingFeatures = new ArrayList<>();
+    boolean written;
+    /** names of the pom properties used to resolve version placeholders */
+    final Set<String> resolvedProperties = new TreeSet<>();
+    /** SHA-256 of the file content after the rewrite */
+    String contentHash;
+    /** edits found by a verification, which leaves the file untouched */
+    final List<LineEdit> edits = new ArrayList<>();
+
+    RewriteResult(Path featuresFile) {
+        this.featuresFile = featuresFile;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,210 @@
+package feature.utils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.SessionData;
+
+/**
+ * Caches shared by all the executions of the plugin in a build, so that the modules of a reactor don't
+ * compile the same patterns, interpolate the same properties, validate the same versions or inspect the
+ * same jars over and over.
+ * <p>
+ * The cache is kept in the {@link SessionData} of the repository session, which lives as long as the build.
+ */
+final class SessionCache {
+
+    private static final String KEY = SessionCache.class.getName();
+
+    /**
+     * Memoized values, counting hits and misses.
+     */
+    static final class Memo<K, V> {
+        private final String name;
+        private final Map<K, V> values = new ConcurrentHashMap<>();
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+
+        Memo(String name) {
+            this.name = name;
+        }
+
+        V get(K key, Function<? super K, ? extends V> loader) {
+            V value = values.get(key);
+            if (value != null) {
+                hits.increment();
+                return value;
+            }
+            misses.increment();
+            return values.computeIfAbsent(key, loader);
+        }
+
+        /**
+         * @param current whether the cached value is still the one of the key, a stale value is replaced
+         */
+        V get(K key, Predicate<? super V> current, Function<? super K, ? extends V> loader) {
+            V value = values.get(key);
+            if (value != null && current.test(value)) {
+                hits.increment();
+                return value;
+            }
+            misses.increment();
+            return values.compute(key, (k, cached) -> cached != null && current.test(cached) ? cached : loader.apply(k));
+        }
+
+        /**
+         * @return the cached value, {@code null} if there is none
+         */
+        V peek(K key) {
+            V value = values.get(key);
+            (value != null ? hits : misses).increment();
+            return value;
+        }
+
+        void put(K key, V value) {
+            values.put(key, value);
+        }
+
+        int size() {
+            return values.size();
+        }
+
+        long hits() {
+            return hits.sum();
+        }
+
+        long misses() {
+            return misses.sum();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s %d hits/%d misses", name, hits(), misses());
+        }
+    }
+
+    private final Memo<String, Pattern> patterns = new Memo<>("patterns");
+    private final Memo<Map<String, String>, PropertyResolver> propertyTables = new Memo<>("property tables");
+    private final Memo<Path, StampedIndex> indexes = new Memo<>("features indexes");
+    private final Memo<Path, ManifestCache> manifestCaches = new Memo<>("manifest caches");
+    private final Memo<ArtifactKey, ManifestInfo> manifests = new Memo<>("manifests");
+    private final VersionNormalizer versionNormalizer = new VersionNormalizer();
+
+    /**
+     * @return the cache of the build, created by the first execution
+     */
+    static SessionCache of(RepositorySystemSession repositorySession) {
+        SessionData data = repositorySession.getData();
+        while (true) {
+            Object cache = data.get(KEY);
+            if (cache instanceof SessionCache) {
+                return (SessionCache) cache;
+            }
+            if (cache != null) {
+                // left by another version of the plugin, its class isn't ours
+                return new SessionCache();
+            }
+            SessionCache newCache = new SessionCache();
+            if (data.set(KEY, null, newCache)) {
+                return newCache;
+            }
+        }
+    }
+
+    Pattern pattern(String glob) {
+        return patterns.get(glob, FeaturesIndex::toPattern);
+    }
+
+    /**
+     * @param properties the properties of a project, without its {@code project.*} values
+     * @return the interpolated table of the given properties, shared by the projects that have the same ones
+     */
+    PropertyResolver propertyTable(Map<String, String> properties) {
+        return propertyTables.get(properties, table -> new PropertyResolver(null, table));
+    }
+
+    /**
+     * Index of a features file and the size and modification time of the file it was built from.
+     */
+    private static final class StampedIndex {
+        final long size;
+        final FileTime lastModified;
+        final FeaturesIndex index;
+
+        StampedIndex(long size, FileTime lastModified, FeaturesIndex index) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.index = index;
+        }
+
+        boolean isOf(long size, FileTime lastModified) {
+            return this.size == size && this.lastModified.equals(lastModified);
+        }
+    }
+
+    /**
+     * @return the index of the features file, built again only if the file changed, replacing the previous one
+     */
+    FeaturesIndex index(Path featuresFile) throws IOException {
+        long size = Files.size(featuresFile);
+        FileTime lastModified = Files.getLastModifiedTime(featuresFile);
+        try {
+            return indexes.get(featuresFile, stamped -> stamped.isOf(size, lastModified), file -> {
+                try {
+                    return new StampedIndex(size, lastModified, FeaturesIndex.build(file));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }).index;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * @return the number of features files indexed, one index is kept per file
+     */
+    int indexCount() {
+        return indexes.size();
+    }
+
+    ManifestCache manifestCache(Path cacheFile) throws IOException {
+        try {
+            return manifestCaches.get(cacheFile, file -> {
+                try {
+                    return new ManifestCache(file);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Manifests of the wrapped artifacts already inspected by an execution, the ones that couldn't be read aren't kept.
+     */
+    Memo<ArtifactKey, ManifestInfo> manifests() {
+        return manifests;
+    }
+
+    VersionNormalizer versionNormalizer() {
+        return versionNormalizer;
+    }
+
+    String summary() {
+        return String.format("feature-utils build cache: %s, %s, %s, %s, %s, versions %d hits/%d misses", patterns, propertyTables,
+                indexes, manifestCaches, manifests, versionNormalizer.hits(), versionNormalizer.misses());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,120 @@
+package feature.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Unified diff of the line edits of a features file, that {@code patch -p1} or {@code git apply} can apply.
+ * <p>
+ * Edits replace lines one for one, so the old and new side of every hunk have the same length. The file
+ * is read a second time to get the context lines, only the lines of the hunks are decoded and kept.
+ */
+final class UnifiedDiff {
+
+    static final int CONTEXT = 3;
+    private static final String NO_NEWLINE = "\\ No newline at end of file\n";
+
+    private UnifiedDiff() {
+    }
+
+    /**
+     * @param path  path of the file in the diff headers, relative to the directory the patch is applied from
+     * @param edits the edits of the file, sorted by line number
+     */
+    static void write(Appendable out, String path, Path file, List<LineEdit> edits) throws IOException {
+        if (edits.isEmpty()) {
+            return;
+        }
+        try (InputStream in = Files.newInputStream(file)) {
+            write(out, path, in, edits);
+        }
+    }
+
+    /**
+     * @param in the content of the file, e.g. already read into memory
+     */
+    static void write(Appendable out, String path, InputStream in, List<LineEdit> edits) throws IOException {
+        if (edits.isEmpty()) {
+            return;
+        }
+        // merge the edits whose context overlap into the same hunk
+        List<long[]> hunks = new ArrayList<>();
+        for (LineEdit edit : edits) {
+            long from = Math.max(1, edit.lineNumber - CONTEXT);
+            long to = edit.lineNumber + CONTEXT;
+            long[] last = hunks.isEmpty() ? null : hunks.get(hunks.size() - 1);
+            if (last != null && from <= last[1] + 1) {
+                last[1] = to;
+            } else {
+                hunks.add(new long[] { from, to });
+            }
+        }
+
+        List<List<String>> hunkLines = new ArrayList<>(hunks.size());
+        List<String> terminators = new ArrayList<>();
+        LineReader reader = new LineReader(in);
+        long lineNumber = 0;
+        int hunk = 0;
+        List<String> current = null;
+        Charset charset = StandardCharsets.UTF_8;
+        while (hunk < hunks.size() && reader.next()) {
+            lineNumber++;
+            if (lineNumber == 1) {
+                charset = FeaturesFileRewriter.declaredEncoding(reader.bytes(), reader.start(), reader.contentLength());
+            }
+            if (lineNumber < hunks.get(hunk)[0]) {
+                continue;
+            }
+            if (current == null) {
+                current = new ArrayList<>();
+                hunkLines.add(current);
+            }
+            byte[] bytes = reader.bytes();
+            current.add(new String(bytes, reader.start(), reader.contentLength(), charset));
+            terminators.add(new String(bytes, reader.start() + reader.contentLength(), reader.length() - reader.contentLength(), StandardCharsets.US_ASCII));
+            if (lineNumber == hunks.get(hunk)[1]) {
+                hunk++;
+                current = null;
+            }
+        }
+
+        out.append("--- a/").append(path).append('\n');
+        out.append("+++ b/").append(path).append('\n');
+        int editIndex = 0;
+        int terminatorIndex = 0;
+        for (int i = 0; i < hunkLines.size(); i++) {
+            List<String> lines = hunkLines.get(i);
+            long from = hunks.get(i)[0];
+            out.append("@@ -").append(range(from, lines.size())).append(" +").append(range(from, lines.size())).append(" @@\n");
+            for (int j = 0; j < lines.size(); j++) {
+                String terminator = terminators.get(terminatorIndex++);
+                if (editIndex < edits.size() && edits.get(editIndex).lineNumber == from + j) {
+                    LineEdit edit = edits.get(editIndex++);
+                    appendLine(out, '-', edit.oldLine, terminator);
+                    appendLine(out, '+', edit.newLine, terminator);
+                } else {
+                    appendLine(out, ' ', lines.get(j), terminator);
+                }
+            }
+        }
+    }
+
+    private static String range(long from, int length) {
+        return length == 1 ? Long.toString(from) : from + "," + length;
+    }
+
+    private static void appendLine(Appendable out, char prefix, String line, String terminator) throws IOException {
+        out.append(prefix).append(line);
+        if (terminator.isEmpty()) {
+            out.append('\n').append(NO_NEWLINE);
+        } else {
+            out.append(terminator);
+        }
+    }
+}
\ No newline at end of file
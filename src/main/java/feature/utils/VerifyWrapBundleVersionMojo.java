@@ -0,0 +1,175 @@
+package feature.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * Check-only counterpart of {@code ensure-wrap-bundle-version}: fails the build when a wrap bundle misses a
+ * correct {@code Bundle-Version} header and outputs the patch the rewrite would apply. The features files
+ * are never written.
+ * <p>
+ * With {@code resolveManifests}, the scan stopping at the first violation resolves the wrapped artifacts one at a time,
+ * as their lines are checked, while {@code reportAllViolations} resolves all of them concurrently before the scan.
+ */
+@Mojo(name = "verify-wrap-bundle-version", defaultPhase = LifecyclePhase.VALIDATE)
+public class VerifyWrapBundleVersionMojo extends AbstractFeaturesMojo {
+
+    /**
+     * Scan all the features files and report every violation instead of stopping at the first one.
+     */
+    @Parameter(property = "featuresUtils.reportAllViolations", defaultValue = "false", required = false)
+    private boolean reportAllViolations;
+
+    /**
+     * Unified diff of the edits {@code ensure-wrap-bundle-version} would make, relative to the project base directory.
+     */
+    @Parameter(property = "featuresUtils.patchFile", defaultValue = "${project.build.directory}/feature-utils/wrap-bundle-version.patch", required = false)
+    private File patchFile;
+
+    @Override
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        List<Path> files = collectFeaturesFiles();
+        if (files.isEmpty()) {
+            getLog().warn("No features file to verify, configure featuresFilePath, featuresFiles or includes");
+            return;
+        }
+
+        ExecutionReport report = new ExecutionReport("verify-wrap-bundle-version", project.getId());
+        List<String> selectedFeatures = getSelectedFeatures();
+        PropertyResolver propertyResolver = newPropertyResolver();
+        // the other files stop scanning as soon as one of them found a violation
+        AtomicBoolean stop = reportAllViolations ? null : new AtomicBoolean();
+        List<RewriteResult> violations = new ArrayList<>();
+
+        ExecutorService executor = newExecutor("features-utils-verify", files.size());
+        ArtifactResolutionStage.OnDemand lazyManifests = null;
+        try {
+            Function<ArtifactKey, ManifestInfo> manifests = null;
+            if (resolveManifests && stop != null) {
+                // the scan may stop at its first violation, only the artifacts of the lines checked are resolved
+                lazyManifests = lazyManifests();
+                manifests = lazyManifests;
+            } else if (resolveManifests) {
+                long resolveStart = System.nanoTime();
+                manifests = resolveWrappedArtifacts(files, selectedFeatures, propertyResolver, executor)::get;
+                report.setResolveNanos(System.nanoTime() - resolveStart);
+            }
+            FeaturesFileRewriter fileRewriter = new FeaturesFileRewriter(
+                    new WrapBundleVersionRewriter(getLog(), propertyResolver, getSessionCache().versionNormalizer(), getVersionRepairs(), manifests,
+                            resolutionFailurePolicy, preservePlaceholders, getWrapRules()),
+                    getSessionCache());
+
+            Map<Path, Future<RewriteResult>> futures = new LinkedHashMap<>();
+            for (Path file : files) {
+                futures.put(file, executor.submit(() -> fileRewriter.verify(file, selectedFeatures, stop)));
+            }
+            for (Map.Entry<Path, Future<RewriteResult>> entry : futures.entrySet()) {
+                try {
+                    RewriteResult result = entry.getValue().get();
+                    for (String missingFeature : result.missingFeatures) {
+                        getLog().error(String.format("Feature %s not found in %s, no lines will be verified for it", missingFeature, entry.getKey()));
+                    }
+                    report.add(result);
+                    if (!result.edits.isEmpty()) {
+                        violations.add(result);
+                    }
+                } catch (ExecutionException e) {
+                    report.addFailure(entry.getKey());
+                    getLog().error(String.format("Unable to verify features file %s: %s", entry.getKey(), e.getCause().getMessage()));
+                    getLog().debug(e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Interrupted while verifying features files", e);
+        } finally {
+            executor.shutdownNow();
+            if (lazyManifests != null) {
+                closeLazyManifests(lazyManifests);
+            }
+        }
+
+        writeReport(report);
+        if (!report.failures().isEmpty()) {
+            throw new MojoExecutionException(String.format("Unable to verify features files %s", report.failures()));
+        }
+        if (violations.isEmpty()) {
+            deletePatch();
+            return;
+        }
+
+        int count = 0;
+        StringBuilder patch = new StringBuilder();
+        for (RewriteResult result : violations) {
+            for (LineEdit edit : result.edits) {
+                getLog().error(String.format("%s:%d: expected %s", result.featuresFile, edit.lineNumber, edit.newLine.trim()));
+                count++;
+            }
+            try {
+                UnifiedDiff.write(patch, patchPath(result.featuresFile), result.featuresFile, result.edits);
+            } catch (IOException e) {
+                getLog().warn(String.format("Unable to compute the patch of %s: %s", result.featuresFile, e.getMessage()));
+            }
+        }
+        getLog().info("Edits ensure-wrap-bundle-version would make:\n" + patch);
+        writePatch(patch);
+
+        throw new MojoFailureException(String.format("%d wrap bundle(s) without a correct Bundle-Version%s, apply %s with patch -p1 "
+                + "or run ensure-wrap-bundle-version", count, reportAllViolations ? "" : " (stopped at the first one, "
+                + "set featuresUtils.reportAllViolations to list them all)", patchFile));
+    }
+
+    private String patchPath(Path featuresFile) {
+        Path basedir = project.getBasedir().toPath().toAbsolutePath().normalize();
+        Path path = featuresFile.startsWith(basedir) ? basedir.relativize(featuresFile) : featuresFile;
+        String patchPath = path.toString().replace(File.separatorChar, '/');
+        return patchPath.startsWith("/") ? patchPath.substring(1) : patchPath;
+    }
+
+    private void writePatch(StringBuilder patch) {
+        if (patchFile == null) {
+            return;
+        }
+        try {
+            Files.createDirectories(patchFile.toPath().toAbsolutePath().getParent());
+            try (Writer out = Files.newBufferedWriter(patchFile.toPath(), StandardCharsets.UTF_8)) {
+                out.append(patch);
+            }
+        } catch (IOException e) {
+            getLog().warn(String.format("Unable to write patch %s: %s", patchFile, e.getMessage()));
+        }
+    }
+
+    /**
+     * A patch left by a previous build would no longer match the features files.
+     */
+    private void deletePatch() {
+        if (patchFile == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(patchFile.toPath());
+        } catch (IOException e) {
+            getLog().warn(String.format("Unable to delete stale patch %s: %s", patchFile, e.getMessage()));
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,129 @@
+package feature.utils;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.felix.utils.version.VersionCleaner;
+
+/**
+ * Validates maven versions as OSGi versions and cleans the invalid ones with
+ * {@link VersionCleaner#clean(String)}.
+ * <p>
+ * The same versions repeat thousands of times across features files, so the outcome is cached by raw
+ * version. The cache is bounded: once full, new versions are still normalized but no longer cached.
+ * Validation follows the grammar of {@link org.osgi.framework.Version} without throwing.
+ */
+final class VersionNormalizer {
+
+    static final int DEFAULT_MAX_ENTRIES = 10_000;
+
+    /**
+     * Outcome of the normalization of a raw version.
+     */
+    static final class NormalizedVersion {
+        /** the version to declare, the raw version itself or its cleaned form */
+        final String version;
+        final boolean valid;
+        final boolean cleaned;
+        /** what repaired the version when it isn't the clean function, {@code null} otherwise */
+        final String repairedBy;
+
+        NormalizedVersion(String version, boolean valid, boolean cleaned) {
+            this(version, valid, cleaned, null);
+        }
+
+        NormalizedVersion(String version, boolean valid, boolean cleaned, String repairedBy) {
+            this.version = version;
+            this.valid = valid;
+            this.cleaned = cleaned;
+            this.repairedBy = repairedBy;
+        }
+    }
+
+    private final Map<String, NormalizedVersion> cache = new ConcurrentHashMap<>();
+    private final int maxEntries;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    VersionNormalizer() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    VersionNormalizer(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    NormalizedVersion normalize(String rawVersion) {
+        NormalizedVersion normalized = cache.get(rawVersion);
+        if (normalized != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+            normalized = doNormalize(rawVersion);
+            if (cache.size() < maxEntries) {
+                cache.putIfAbsent(rawVersion, normalized);
+            }
+        }
+        return normalized;
+    }
+
+    long hits() {
+        return hits.sum();
+    }
+
+    long misses() {
+        return misses.sum();
+    }
+
+    private static NormalizedVersion doNormalize(String rawVersion) {
+        if (isValidOsgiVersion(rawVersion)) {
+            return new NormalizedVersion(rawVersion, true, false);
+        }
+        String cleanVersion = VersionCleaner.clean(rawVersion);
+        return new NormalizedVersion(cleanVersion, isValidOsgiVersion(cleanVersion), true);
+    }
+
+    /**
+     * Non throwing equivalent of {@code new org.osgi.framework.Version(version)}:
+     * {@code major('.'minor('.'micro('.'qualifier)?)?)?} with non negative int components and a
+     * qualifier made of letters, digits, {@code _} and {@code -}.
+     */
+    static boolean isValidOsgiVersion(String version) {
+        int length = version.length();
+        int i = 0;
+        for (int component = 0; component < 3; component++) {
+            int start = i;
+            long value = 0;
+            while (i < length && version.charAt(i) >= '0' && version.charAt(i) <= '9') {
+                value = value * 10 + (version.charAt(i) - '0');
+                if (value > Integer.MAX_VALUE) {
+                    return false;
+                }
+                i++;
+            }
+            if (i == start) {
+                return false;
+            }
+            if (i == length) {
+                return true;
+            }
+            if (version.charAt(i) != '.') {
+                return false;
+            }
+            i++;
+        }
+
+        // qualifier
+        if (i == length) {
+            return false;
+        }
+        for (; i < length; i++) {
+            char c = version.charAt(i);
+            if (!((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_' || c == '-')) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,132 @@
+package feature.utils;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Rule repairing the maven versions that aren't valid OSGi versions, configured in the pom:
+ *
+ * <pre>
+ * &lt;versionRepairs&gt;
+ *     &lt;versionRepair&gt;
+ *         &lt;artifact&gt;com.google.apis:google-api-services-gmail:v1-rev20240520-2.0.0&lt;/artifact&gt;
+ *         &lt;version&gt;2.0.0.v1-rev20240520&lt;/version&gt;
+ *     &lt;/versionRepair&gt;
+ *     &lt;versionRepair&gt;
+ *         &lt;artifact&gt;com.google.apis.*&lt;/artifact&gt;
+ *         &lt;pattern&gt;v(\d+)-rev(\d+)-(\d+)\.(\d+)\.(\d+)&lt;/pattern&gt;
+ *         &lt;version&gt;$3.$4.$5.v$1-rev$2&lt;/version&gt;
+ *     &lt;/versionRepair&gt;
+ * &lt;/versionRepairs&gt;
+ * </pre>
+ *
+ * The artifact is an exact {@code groupId:artifactId[:version]}, a {@code groupId} prefix ending with {@code .*}
+ * or, if not set, any artifact. Without a pattern the version is used as is, with one the version is the replacement
+ * of the whole maven version and may refer to the groups of the pattern.
+ */
+public class VersionRepair {
+
+    private String artifact;
+    private String pattern;
+    private String version;
+    private Pattern compiledPattern;
+
+    public VersionRepair() {
+    }
+
+    VersionRepair(String artifact, String pattern, String version) {
+        this.artifact = artifact;
+        this.pattern = pattern;
+        this.version = version;
+    }
+
+    public void setArtifact(String artifact) {
+        this.artifact = artifact;
+    }
+
+    public void setPattern(String pattern) {
+        this.pattern = pattern;
+        this.compiledPattern = null;
+    }
+
+    public void setVersion(String version) {
+        this.version = version;
+    }
+
+    /**
+     * @return the artifact selector, {@code null} if the rule applies to any artifact
+     */
+    String artifact() {
+        return artifact == null || artifact.trim().isEmpty() || artifact.trim().equals("*") ? null : artifact.trim();
+    }
+
+    /**
+     * @return {@code true} if the artifact selector is a {@code groupId} prefix
+     */
+    boolean isGroupIdPrefix() {
+        String selector = artifact();
+        return selector != null && selector.endsWith("*");
+    }
+
+    /**
+     * @return the {@code groupId} prefix without its {@code .*}
+     */
+    String groupIdPrefix() {
+        String selector = artifact();
+        String prefix = selector.substring(0, selector.length() - 1);
+        return prefix.endsWith(".") ? prefix.substring(0, prefix.length() - 1) : prefix;
+    }
+
+    /**
+     * @return why the rule can't be applied, {@code null} if it is valid
+     */
+    String validate() {
+        if (version == null || version.trim().isEmpty()) {
+            return "the version of a version repair is mandatory";
+        }
+        String selector = artifact();
+        if (selector != null) {
+            int wildcard = selector.indexOf('*');
+            if (wildcard >= 0 && (wildcard != selector.length() - 1 || selector.indexOf(':') >= 0)) {
+                return String.format("artifact %s must be groupId:artifactId[:version] or a groupId prefix ending with .*", selector);
+            }
+            int parts = selector.split(":", -1).length;
+            if (wildcard < 0 && parts != 2 && parts != 3) {
+                return String.format("artifact %s must be groupId:artifactId[:version] or a groupId prefix ending with .*", selector);
+            }
+        }
+        if (pattern != null) {
+            try {
+                compiledPattern = Pattern.compile(pattern.trim());
+            } catch (PatternSyntaxException e) {
+                return String.format("invalid pattern %s: %s", pattern, e.getDescription());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the repaired version, {@code null} if the rule doesn't apply to the version
+     */
+    String apply(String mavenVersion) {
+        if (pattern == null) {
+            return version.trim();
+        }
+        if (compiledPattern == null) {
+            compiledPattern = Pattern.compile(pattern.trim());
+        }
+        Matcher matcher = compiledPattern.matcher(mavenVersion);
+        if (!matcher.matches()) {
+            return null;
+        }
+        StringBuffer repaired = new StringBuffer();
+        matcher.appendReplacement(repaired, version.trim());
+        return repaired.toString();
+    }
+
+    @Override
+    public String toString() {
+        return (artifact() == null ? "*" : artifact()) + (pattern == null ? "" : " " + pattern) + " -> " + version;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,201 @@
+package feature.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import feature.utils.VersionNormalizer.NormalizedVersion;
+
+/**
+ * Chain of strategies repairing the maven versions that aren't valid OSGi versions, applied in order until one
+ * of them gives a valid OSGi version:
+ * <ul>
+ * <li>{@code rules}: the configured {@link VersionRepair}s</li>
+ * <li>{@code manifest}: the {@code Bundle-Version} or {@code Implementation-Version} of the jar, when manifests are resolved</li>
+ * <li>{@code clean}: {@link org.apache.felix.utils.version.VersionCleaner#clean(String)}</li>
+ * </ul>
+ * The rules are compiled once into a lookup table: exact {@code groupId:artifactId:version} and
+ * {@code groupId:artifactId} rules in a hash map, {@code groupId} prefix rules in a trie of the {@code groupId}
+ * segments and the rules of any artifact in a list. An artifact is looked up from the most specific rules to the
+ * least specific ones, so that only the rules that may apply to it are tried, and the outcome is cached by artifact.
+ */
+final class VersionRepairs {
+
+    enum Strategy {
+        RULES,
+        MANIFEST,
+        CLEAN
+    }
+
+    static final VersionRepairs CLEAN_ONLY = new VersionRepairs(Collections.singletonList(Strategy.CLEAN), Collections.emptyList());
+
+    private static final int MAX_CACHED_ARTIFACTS = 10_000;
+    /** cached for the artifacts no rule repairs */
+    private static final String NO_REPAIR = "";
+
+    /**
+     * Node of the {@code groupId} segments trie.
+     */
+    private static final class Node {
+        final Map<String, Node> children = new HashMap<>(4);
+        final List<VersionRepair> rules = new ArrayList<>(1);
+    }
+
+    private final List<Strategy> strategies;
+    private final Map<String, List<VersionRepair>> exactRules = new HashMap<>();
+    private final Node groupIdPrefixRules = new Node();
+    private final List<VersionRepair> anyArtifactRules = new ArrayList<>();
+    private final Map<String, String> repaired = new ConcurrentHashMap<>();
+    private final boolean hasRules;
+
+    /**
+     * @param rules valid rules, in the order they apply when several of them of the same kind match an artifact
+     */
+    VersionRepairs(List<Strategy> strategies, List<VersionRepair> rules) {
+        this.strategies = strategies;
+        for (VersionRepair rule : rules) {
+            String selector = rule.artifact();
+            if (selector == null) {
+                anyArtifactRules.add(rule);
+            } else if (rule.isGroupIdPrefix()) {
+                Node node = groupIdPrefixRules;
+                String prefix = rule.groupIdPrefix();
+                if (!prefix.isEmpty()) {
+                    for (String segment : prefix.split("\\.")) {
+                        node = node.children.computeIfAbsent(segment, s -> new Node());
+                    }
+                }
+                node.rules.add(rule);
+            } else {
+                exactRules.computeIfAbsent(selector, s -> new ArrayList<>(1)).add(rule);
+            }
+        }
+        this.hasRules = !rules.isEmpty();
+    }
+
+    /**
+     * @param names comma separated names of the strategies, e.g. {@code rules,manifest,clean}
+     * @throws IllegalArgumentException if a name isn't a strategy
+     */
+    static List<Strategy> strategies(List<String> names) {
+        List<Strategy> strategies = new ArrayList<>();
+        for (String name : names) {
+            for (String strategy : name.split(",")) {
+                if (!strategy.trim().isEmpty()) {
+                    strategies.add(strategy(strategy.trim()));
+                }
+            }
+        }
+        return strategies;
+    }
+
+    private static Strategy strategy(String name) {
+        for (Strategy strategy : Strategy.values()) {
+            if (strategy.name().equalsIgnoreCase(name)) {
+                return strategy;
+            }
+        }
+        throw new IllegalArgumentException(String.format("Unknown version repair strategy %s, expected one of %s",
+                name, Arrays.toString(Strategy.values()).toLowerCase(Locale.ROOT)));
+    }
+
+    /**
+     * @param version maven version that isn't a valid OSGi version
+     * @param manifest gives the manifest of the artifact, may give {@code null}
+     * @param cleaned the outcome of the clean function for the version
+     * @return the first valid version given by the strategies, an invalid one if none of them gives one
+     */
+    NormalizedVersion repair(String groupId, String artifactId, String version, Supplier<ManifestInfo> manifest, NormalizedVersion cleaned) {
+        for (Strategy strategy : strategies) {
+            switch (strategy) {
+            case RULES:
+                String repairedVersion = applyRules(groupId, artifactId, version);
+                if (repairedVersion != null) {
+                    return new NormalizedVersion(repairedVersion, true, true, "version repair rules");
+                }
+                break;
+            case MANIFEST:
+                ManifestInfo info = manifest.get();
+                if (info != null) {
+                    if (info.bundleVersion != null && VersionNormalizer.isValidOsgiVersion(info.bundleVersion)) {
+                        return new NormalizedVersion(info.bundleVersion, true, true, "the Bundle-Version of the jar manifest");
+                    }
+                    if (info.implementationVersion != null && VersionNormalizer.isValidOsgiVersion(info.implementationVersion)) {
+                        return new NormalizedVersion(info.implementationVersion, true, true, "the Implementation-Version of the jar manifest");
+                    }
+                }
+                break;
+            default:
+                if (cleaned.valid) {
+                    return cleaned;
+                }
+            }
+        }
+        return new NormalizedVersion(version, false, false);
+    }
+
+    /**
+     * @return the valid OSGi version given by the first rule applying to the artifact, {@code null} if there is none
+     */
+    String applyRules(String groupId, String artifactId, String version) {
+        if (!hasRules) {
+            return null;
+        }
+        String artifact = groupId + ':' + artifactId + ':' + version;
+        String cached = repaired.get(artifact);
+        if (cached == null) {
+            cached = lookup(groupId, artifactId, version);
+            if (repaired.size() < MAX_CACHED_ARTIFACTS) {
+                repaired.putIfAbsent(artifact, cached);
+            }
+        }
+        return cached == NO_REPAIR ? null : cached;
+    }
+
+    private String lookup(String groupId, String artifactId, String version) {
+        String repairedVersion = apply(exactRules.get(groupId + ':' + artifactId + ':' + version), version);
+        if (repairedVersion == null) {
+            repairedVersion = apply(exactRules.get(groupId + ':' + artifactId), version);
+        }
+        if (repairedVersion == null) {
+            // the nodes of the groupId segments, the longest prefix is the most specific
+            List<Node> path = new ArrayList<>(4);
+            path.add(groupIdPrefixRules);
+            Node node = groupIdPrefixRules;
+            int from = 0;
+            while (node != null && from <= groupId.length()) {
+                int to = groupId.indexOf('.', from);
+                node = node.children.get(groupId.substring(from, to < 0 ? groupId.length() : to));
+                if (node != null) {
+                    path.add(node);
+                }
+                from = to < 0 ? groupId.length() + 1 : to + 1;
+            }
+            for (int i = path.size() - 1; i >= 0 && repairedVersion == null; i--) {
+                repairedVersion = apply(path.get(i).rules, version);
+            }
+        }
+        if (repairedVersion == null) {
+            repairedVersion = apply(anyArtifactRules, version);
+        }
+        return repairedVersion == null ? NO_REPAIR : repairedVersion;
+    }
+
+    private static String apply(List<VersionRepair> rules, String version) {
+        if (rules != null) {
+            for (VersionRepair rule : rules) {
+                String repairedVersion = rule.apply(version);
+                if (repairedVersion != null && VersionNormalizer.isValidOsgiVersion(repairedVersion)) {
+                    return repairedVersion;
+                }
+            }
+        }
+        return null;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,177 @@
+package feature.utils;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * Long running variant of {@code ensure-wrap-bundle-version} for feature development: processes the features
+ * files once, then watches them and reprocesses only the features edited since, until the build is stopped.
+ * <p>
+ * The property table, version cache, manifests and features indexes stay warm between edits, so an edit is
+ * fixed in a few milliseconds. The writes of the goal itself are recognized by their content hash and ignored.
+ */
+@Mojo(name = "watch-wrap-bundle-version")
+public class WatchWrapBundleVersionMojo extends AbstractFeaturesMojo {
+
+    /**
+     * Seconds after which the goal stops watching, it watches until the build is stopped if {@code 0}.
+     */
+    @Parameter(property = "featuresUtils.watchDuration", defaultValue = "0", required = false)
+    private long watchDuration;
+
+    /**
+     * Milliseconds without new change events to wait before processing a change, editors save in several writes.
+     */
+    @Parameter(property = "featuresUtils.watchDebounce", defaultValue = "100", required = false)
+    private long watchDebounce;
+
+    private List<String> selectedFeatures;
+    private PropertyResolver propertyResolver;
+    private Map<ArtifactKey, ManifestInfo> manifests;
+    private FeaturesFileRewriter fileRewriter;
+    private ExecutorService executor;
+    private final Map<Path, FeaturesSnapshot> snapshots = new HashMap<>();
+
+    @Override
+    public void execute() throws MojoExecutionException {
+        List<Path> files = collectFeaturesFiles();
+        if (files.isEmpty()) {
+            getLog().warn("No features file to watch, configure featuresFilePath, featuresFiles or includes");
+            return;
+        }
+
+        selectedFeatures = getSelectedFeatures();
+        propertyResolver = newPropertyResolver();
+        // filled as the edited features are resolved, artifacts missing from it follow the failure policy
+        manifests = new ConcurrentHashMap<>();
+        fileRewriter = new FeaturesFileRewriter(new WrapBundleVersionRewriter(getLog(), propertyResolver,
+                getSessionCache().versionNormalizer(), getVersionRepairs(), resolveManifests ? manifests::get : null, resolutionFailurePolicy,
+                preservePlaceholders, getWrapRules()), getSessionCache());
+        executor = newExecutor("features-utils-watch", files.size());
+        try (WatchService watchService = FileSystems.getDefault().newWatchService()) {
+            Set<Path> directories = new LinkedHashSet<>();
+            for (Path file : files) {
+                process(file);
+                directories.add(file.getParent());
+            }
+            for (Path directory : directories) {
+                directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            }
+            getLog().info(String.format("Watching %d features files%s", files.size(),
+                    watchDuration > 0 ? " for " + watchDuration + " s" : ", stop the build to end"));
+            watch(watchService, new HashSet<>(files));
+        } catch (IOException e) {
+            throw new MojoExecutionException("Unable to watch the features files", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
+        }
+        getLog().info(getSessionCache().summary());
+    }
+
+    private void watch(WatchService watchService, Set<Path> files) throws InterruptedException, MojoExecutionException {
+        long deadline = watchDuration > 0 ? System.nanoTime() + TimeUnit.SECONDS.toNanos(watchDuration) : Long.MAX_VALUE;
+        while (true) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return;
+            }
+            WatchKey key = watchDuration > 0 ? watchService.poll(remaining, TimeUnit.NANOSECONDS) : watchService.take();
+            if (key == null) {
+                return;
+            }
+            Set<Path> changed = new LinkedHashSet<>();
+            do {
+                Path directory = (Path) key.watchable();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() != StandardWatchEventKinds.OVERFLOW) {
+                        Path file = directory.resolve((Path) event.context());
+                        if (files.contains(file)) {
+                            changed.add(file);
+                        }
+                    }
+                }
+                key.reset();
+                key = watchService.poll(watchDebounce, TimeUnit.MILLISECONDS);
+            } while (key != null);
+
+            for (Path file : changed) {
+                process(file);
+            }
+        }
+    }
+
+    /**
+     * Rewrites the features of the file that changed since it was last processed.
+     */
+    private void process(Path file) throws MojoExecutionException, InterruptedException {
+        long start = System.nanoTime();
+        FeaturesSnapshot previous = snapshots.get(file);
+        FeaturesSnapshot current;
+        try {
+            current = FeaturesSnapshot.take(file, getSessionCache());
+        } catch (IOException e) {
+            // e.g. saved while half edited, the next save will be processed
+            getLog().warn(String.format("Unable to read features file %s: %s", file, e.getMessage()));
+            return;
+        }
+        if (previous != null && previous.contentHash.equals(current.contentHash)) {
+            // written by the goal itself or saved without changes
+            return;
+        }
+
+        Set<String> changedFeatures = current.changedFeatures(previous);
+        if (selectedFeatures != null) {
+            Set<String> selected = new HashSet<>();
+            for (FeaturesIndex.Range range : current.index.select(selectedFeatures, new ArrayList<>(), getSessionCache()::pattern)) {
+                selected.add(range.name);
+            }
+            changedFeatures.retainAll(selected);
+        }
+        if (changedFeatures.isEmpty()) {
+            snapshots.put(file, current);
+            return;
+        }
+
+        List<String> targetFeatures = new ArrayList<>(changedFeatures);
+        if (resolveManifests) {
+            for (Map.Entry<ArtifactKey, ManifestInfo> manifest : resolveWrappedArtifacts(Collections.singletonList(file), targetFeatures,
+                    propertyResolver, executor).entrySet()) {
+                if (manifest.getValue() != null) {
+                    manifests.put(manifest.getKey(), manifest.getValue());
+                }
+            }
+        }
+        try {
+            RewriteResult result = fileRewriter.rewrite(file, targetFeatures);
+            // remember our own write so that its change event is ignored
+            snapshots.put(file, result.written ? FeaturesSnapshot.take(file, getSessionCache()) : current);
+            getLog().info(String.format("%s: %d features changed %s, %d lines updated in %d ms", file.getFileName(), changedFeatures.size(),
+                    changedFeatures, result.linesChanged, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+        } catch (IOException e) {
+            getLog().error(String.format("Unable to update features file %s: %s", file, e.getMessage()));
+            getLog().debug(e);
+        }
+    }
+}
\ No newline at end of file
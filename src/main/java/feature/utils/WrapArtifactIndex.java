@@ -0,0 +1,239 @@
+package feature.utils;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.apache.maven.artifact.versioning.ComparableVersion;
+
+/**
+ * Index of the artifacts wrapped by features files: artifact to the versions and {@code Bundle-Version} headers
+ * declared for it and the features declaring them.
+ * <p>
+ * The index is filled line by line while a file is scanned, by a single thread, the indexes of several files
+ * scanned concurrently are then {@link #merge merged}. It keeps one entry per distinct artifact and the names of the
+ * features using it, never the lines themselves.
+ */
+final class WrapArtifactIndex {
+
+    static final String NO_HEADER = "<none>";
+
+    /**
+     * Usages of an artifact, whatever its version.
+     */
+    static final class Artifact {
+        /** {@code groupId:artifactId[:type[:classifier]]} */
+        final String key;
+        /** resolved version to the features wrapping it */
+        final Map<String, Set<String>> versions = new TreeMap<>();
+        /** resolved version to its first declaration, e.g. a placeholder */
+        final Map<String, String> declaredVersions = new HashMap<>();
+        /** resolved version to the resolved {@code Bundle-Version} headers declared for it and the features declaring them */
+        final Map<String, Map<String, Set<String>>> bundleVersions = new TreeMap<>();
+        /** features wrapping the same version of the artifact more than once */
+        final Set<String> duplicates = new TreeSet<>();
+        long occurrences;
+
+        Artifact(String key) {
+            this.key = key;
+        }
+
+        /**
+         * @return {@code true} if the features wrap several versions of the artifact
+         */
+        boolean isSkewed() {
+            return versions.size() > 1;
+        }
+
+        /**
+         * @return the versions of the artifact wrapped with different {@code Bundle-Version} headers
+         */
+        List<String> conflicts() {
+            List<String> conflicts = new ArrayList<>();
+            for (Map.Entry<String, Map<String, Set<String>>> version : bundleVersions.entrySet()) {
+                if (version.getValue().size() > 1) {
+                    conflicts.add(version.getKey());
+                }
+            }
+            return conflicts;
+        }
+
+        String highestVersion() {
+            String highest = null;
+            ComparableVersion highestComparable = null;
+            for (String version : versions.keySet()) {
+                ComparableVersion comparable = new ComparableVersion(version);
+                if (highest == null || comparable.compareTo(highestComparable) > 0) {
+                    highest = version;
+                    highestComparable = comparable;
+                }
+            }
+            return highest;
+        }
+    }
+
+    private final PropertyResolver properties;
+    private final Map<String, Artifact> artifacts = new TreeMap<>();
+    private long wrapBundles;
+
+    WrapArtifactIndex(PropertyResolver properties) {
+        this.properties = properties;
+    }
+
+    static String keyOf(WrapUrl url) {
+        StringBuilder key = new StringBuilder(url.groupId()).append(':').append(url.artifactId());
+        String type = url.type();
+        if (type != null) {
+            key.append(':').append(type);
+            String classifier = url.classifier();
+            if (classifier != null) {
+                key.append(':').append(classifier);
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * Adds the artifact wrapped by the given line, ignored if the line doesn't hold a complete {@code wrap:mvn:} url.
+     *
+     * @param feature name of the feature declaring the line
+     */
+    void add(String feature, String line) {
+        WrapUrl url = WrapUrl.parse(line);
+        if (url == null || !url.maven) {
+            return;
+        }
+        wrapBundles++;
+        String declaredVersion = url.version();
+        String version = resolve(declaredVersion);
+        String bundleVersion = WrapInstructions.parse(url).get(WrapBundleVersionRewriter.BUNDLE_VERSION_HEADER);
+        bundleVersion = bundleVersion == null ? NO_HEADER : resolve(bundleVersion);
+
+        Artifact artifact = artifacts.computeIfAbsent(keyOf(url), Artifact::new);
+        artifact.occurrences++;
+        if (!artifact.versions.computeIfAbsent(version, v -> new TreeSet<>()).add(feature)) {
+            artifact.duplicates.add(feature);
+        }
+        artifact.declaredVersions.putIfAbsent(version, declaredVersion);
+        artifact.bundleVersions.computeIfAbsent(version, v -> new TreeMap<>())
+                .computeIfAbsent(bundleVersion, v -> new TreeSet<>())
+                .add(feature);
+    }
+
+    /**
+     * Adds the artifacts of another index, e.g. the one of another features file.
+     */
+    void merge(WrapArtifactIndex other) {
+        wrapBundles += other.wrapBundles;
+        for (Artifact otherArtifact : other.artifacts.values()) {
+            Artifact artifact = artifacts.computeIfAbsent(otherArtifact.key, Artifact::new);
+            artifact.occurrences += otherArtifact.occurrences;
+            artifact.duplicates.addAll(otherArtifact.duplicates);
+            for (Map.Entry<String, Set<String>> version : otherArtifact.versions.entrySet()) {
+                Set<String> features = artifact.versions.computeIfAbsent(version.getKey(), v -> new TreeSet<>());
+                for (String feature : version.getValue()) {
+                    if (!features.add(feature)) {
+                        artifact.duplicates.add(feature);
+                    }
+                }
+            }
+            for (Map.Entry<String, String> declaredVersion : otherArtifact.declaredVersions.entrySet()) {
+                artifact.declaredVersions.putIfAbsent(declaredVersion.getKey(), declaredVersion.getValue());
+            }
+            for (Map.Entry<String, Map<String, Set<String>>> version : otherArtifact.bundleVersions.entrySet()) {
+                Map<String, Set<String>> bundleVersions = artifact.bundleVersions.computeIfAbsent(version.getKey(), v -> new TreeMap<>());
+                for (Map.Entry<String, Set<String>> bundleVersion : version.getValue().entrySet()) {
+                    bundleVersions.computeIfAbsent(bundleVersion.getKey(), v -> new TreeSet<>()).addAll(bundleVersion.getValue());
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the value with its placeholders resolved, as declared if one of them can't be resolved
+     */
+    private String resolve(String value) {
+        if (value.indexOf("${") < 0) {
+            return value;
+        }
+        String resolved = properties.interpolate(value, null);
+        return resolved == null ? value : resolved;
+    }
+
+    Collection<Artifact> artifacts() {
+        return artifacts.values();
+    }
+
+    long wrapBundles() {
+        return wrapBundles;
+    }
+
+    /**
+     * @return the declared version each skewed artifact must be aligned to, its highest one
+     */
+    Map<String, String> alignedVersions() {
+        Map<String, String> aligned = new HashMap<>();
+        for (Artifact artifact : artifacts.values()) {
+            if (artifact.isSkewed()) {
+                aligned.put(artifact.key, artifact.declaredVersions.get(artifact.highestVersion()));
+            }
+        }
+        return aligned;
+    }
+
+    /**
+     * Writes the artifacts that are skewed, conflicting or duplicated.
+     */
+    void writeJson(Writer out) throws IOException {
+        out.write("{\n");
+        out.write("  \"wrapBundles\": " + wrapBundles + ",\n");
+        out.write("  \"artifacts\": " + artifacts.size() + ",\n");
+        out.write("  \"issues\": [");
+        String separator = "\n    ";
+        for (Artifact artifact : artifacts.values()) {
+            List<String> conflicts = artifact.conflicts();
+            if (!artifact.isSkewed() && conflicts.isEmpty() && artifact.duplicates.isEmpty()) {
+                continue;
+            }
+            out.write(separator + "{\"artifact\": " + ExecutionReport.quote(artifact.key)
+                    + ", \"occurrences\": " + artifact.occurrences
+                    + ", \"versions\": " + toJson(artifact.versions)
+                    + ", \"conflictingBundleVersions\": {");
+            String conflictSeparator = "";
+            for (String version : conflicts) {
+                out.write(conflictSeparator + ExecutionReport.quote(version) + ": " + toJson(artifact.bundleVersions.get(version)));
+                conflictSeparator = ", ";
+            }
+            out.write("}, \"duplicatedIn\": " + toJson(artifact.duplicates) + "}");
+            separator = ",\n    ";
+        }
+        out.write("\n  ]\n}\n");
+    }
+
+    private static String toJson(Map<String, Set<String>> values) {
+        StringBuilder sb = new StringBuilder("{");
+        String separator = "";
+        for (Map.Entry<String, Set<String>> value : values.entrySet()) {
+            sb.append(separator).append(ExecutionReport.quote(value.getKey())).append(": ").append(toJson(value.getValue()));
+            separator = ", ";
+        }
+        return sb.append('}').toString();
+    }
+
+    private static String toJson(Set<String> values) {
+        StringBuilder sb = new StringBuilder("[");
+        String separator = "";
+        for (String value : values) {
+            sb.append(separator).append(ExecutionReport.quote(value));
+            separator = ", ";
+        }
+        return sb.append(']').toString();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,265 @@
+package feature.utils;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.function.Function;
+
+import feature.utils.ArtifactResolutionStage.FailurePolicy;
+import feature.utils.VersionNormalizer.NormalizedVersion;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Ensures that the {@code wrap:} entry of a bundle element declares a {@code Bundle-Version} header matching
+ * the maven version of the wrapped artifact, then applies the configured {@link WrapRule}s. All the edits of
+ * an element are made on its {@link WrapInstructions} and serialized once.
+ * <p>
+ * The version of the non maven urls, e.g. {@code wrap:file:}, is taken from the maven repository layout of their
+ * path, their manifest isn't inspected. The ones without a version only get the rules, with their declared
+ * {@code Bundle-Version}.
+ */
+class WrapBundleVersionRewriter {
+
+    static final String BUNDLE_VERSION_HEADER = "Bundle-Version";
+    static final String INSTRUCTION_SEPARATOR = "&amp;";
+
+    private final Log log;
+    private final PropertyResolver properties;
+    private final VersionNormalizer versionNormalizer;
+    private final VersionRepairs versionRepairs;
+    private final Function<ArtifactKey, ManifestInfo> manifests;
+    private final FailurePolicy failurePolicy;
+    private final boolean preservePlaceholders;
+    private final List<WrapRule> rules;
+    private Map<String, String> alignedVersions = Collections.emptyMap();
+    private PropertyResolver urlProperties;
+
+    WrapBundleVersionRewriter(Log log, Properties properties) {
+        this(log, new PropertyResolver(properties), new VersionNormalizer(), VersionRepairs.CLEAN_ONLY, null, FailurePolicy.WARN, true, Collections.emptyList());
+    }
+
+    /**
+     * @param properties resolves the version placeholders, may be shared by several rewriters
+     * @param versionNormalizer validates and cleans the versions, may be shared by several rewriters
+     * @param versionRepairs repair the versions that aren't valid OSGi versions
+     * @param manifests looks up the manifest of a wrapped artifact, {@code null} if it couldn't be read, used to leave the
+     *            ones that already are OSGi bundles alone, may be {@code null}
+     * @param failurePolicy applied to the artifacts whose manifest couldn't be read
+     * @param preservePlaceholders write the version placeholder rather than its value in the {@code Bundle-Version} header
+     * @param rules applied in order after the {@code Bundle-Version} header is set
+     */
+    WrapBundleVersionRewriter(Log log, PropertyResolver properties, VersionNormalizer versionNormalizer, VersionRepairs versionRepairs,
+            Function<ArtifactKey, ManifestInfo> manifests, FailurePolicy failurePolicy, boolean preservePlaceholders, List<WrapRule> rules) {
+        this.log = log;
+        this.properties = properties;
+        this.versionNormalizer = versionNormalizer;
+        this.versionRepairs = versionRepairs;
+        this.manifests = manifests;
+        this.failurePolicy = failurePolicy;
+        this.preservePlaceholders = preservePlaceholders;
+        this.rules = rules;
+    }
+
+    /**
+     * Rewrites the version of the wrapped artifacts before their {@code Bundle-Version} header is set.
+     *
+     * @param alignedVersions {@link WrapArtifactIndex#keyOf(WrapUrl) artifact key} to the version to declare, e.g. a placeholder
+     */
+    void alignVersions(Map<String, String> alignedVersions) {
+        this.alignedVersions = alignedVersions;
+    }
+
+    /**
+     * Writes the value of the version placeholders of the artifact urls that resolve differently through the given
+     * properties, e.g. the ones overridden by a distribution, so that the url and its {@code Bundle-Version} header agree.
+     *
+     * @param urlProperties the properties the placeholders left in the urls resolve through, e.g. the ones of the project
+     */
+    void resolveUrlPlaceholders(PropertyResolver urlProperties) {
+        this.urlProperties = urlProperties;
+    }
+
+    /**
+     * @return the coordinates of the artifact wrapped by the line, {@code null} if the line doesn't wrap a
+     *         maven artifact or its version can't be resolved
+     */
+    ArtifactKey artifactKey(String line) {
+        WrapUrl url = WrapUrl.parse(line);
+        return url == null ? null : artifactKey(url);
+    }
+
+    /**
+     * @return the coordinates of the artifact wrapped by the parsed line, see {@link #artifactKey(String)}
+     */
+    ArtifactKey artifactKey(WrapUrl url) {
+        if (!url.maven) {
+            return null;
+        }
+        String version = url.version();
+        String resolvedVersion = url.hasVersionPlaceholder() ? properties.interpolate(version, null) : version;
+        // unresolved placeholders are reported by the rewrite pass
+        return resolvedVersion == null ? null : ArtifactKey.of(url, resolvedVersion);
+    }
+
+    /**
+     * @param line a line or a whole bundle element
+     * @param result collects the pom properties the version placeholders were resolved through
+     * @return the rewritten line, or the very same instance if nothing had to be changed
+     */
+    String rewrite(String line, RewriteResult result) {
+        WrapUrl url = WrapUrl.parse(line);
+        return url == null ? line : rewrite(url, result);
+    }
+
+    /**
+     * Rewrites a line already parsed, the parsed url may be shared by several rewriters.
+     *
+     * @return the rewritten line, or the very same instance as {@link WrapUrl#line} if nothing had to be changed
+     */
+    String rewrite(WrapUrl url, RewriteResult result) {
+        String line = url.line;
+        result.wrapBundles++;
+        if (!url.hasVersion()) {
+            return applyRules(url, line, result);
+        }
+        // lines that are ignored below aren't aligned either
+        boolean aligned = false;
+        if (url.maven && !alignedVersions.isEmpty()) {
+            String alignedVersion = alignedVersions.get(WrapArtifactIndex.keyOf(url));
+            if (alignedVersion != null && !alignedVersion.equals(url.version())) {
+                url = WrapUrl.parse(line.substring(0, url.versionStart) + alignedVersion + line.substring(url.versionEnd));
+                aligned = true;
+            }
+        }
+        if (urlProperties != null && url.hasVersionPlaceholder()) {
+            String value = properties.interpolate(url.version(), result.resolvedProperties);
+            if (value != null && !value.equals(urlProperties.interpolate(url.version(), null))) {
+                url = WrapUrl.parse(url.line.substring(0, url.versionStart) + value + url.line.substring(url.versionEnd));
+            }
+        }
+
+        String version = url.version();
+        String resolvedVersion = version;
+        if (url.hasVersionPlaceholder()) {
+            resolvedVersion = properties.interpolate(version, result.resolvedProperties);
+            if (resolvedVersion == null) {
+                result.placeholdersUnresolved++;
+                log.error(String.format("Line '%s' was ignored because it wasn't possible to resolve placeholder '%s': %s", line, version, properties.problem(version)));
+                return line;
+            }
+        }
+        if (skipArtifact(url, resolvedVersion, line, result)) {
+            return line;
+        }
+
+        // test if it will work in the Karaf container!
+        NormalizedVersion normalized = versionNormalizer.normalize(resolvedVersion);
+        if (normalized.cleaned) {
+            WrapUrl artifactUrl = url;
+            String artifactVersion = resolvedVersion;
+            normalized = versionRepairs.repair(url.groupId(), url.artifactId(), resolvedVersion,
+                    () -> manifests == null || !artifactUrl.maven ? null : manifests.apply(ArtifactKey.of(artifactUrl, artifactVersion)), normalized);
+        }
+        if (!normalized.valid) {
+            result.invalidVersions++;
+            log.warn(String.format("Line '%s' was ignored because '%s' is not a valid OSGi Version", line, normalized.version));
+            return line;
+        }
+        if (normalized.cleaned) {
+            result.versionsCleaned++;
+            // WARN: placeholder for version will be removed here
+            if (log.isWarnEnabled()) {
+                if (normalized.repairedBy != null) {
+                    String messagePlaceholder = url.hasVersionPlaceholder() ? ". Placeholder from artifact version was replaced with the repaired value" : ".";
+                    log.warn(String.format("Line '%s' was set with Bundle-Version '%s', repaired from %s by %s%s", line, normalized.version, resolvedVersion, normalized.repairedBy, messagePlaceholder));
+                } else {
+                    String messagePlaceholder = url.hasVersionPlaceholder() ? ". Placeholder from artifact version was replaced with value from clean function" : ".";
+                    log.warn(String.format("Line '%s' was set with Bundle-Version '%s', the output of org.apache.felix.utils.version.VersionCleaner.clean(%s)%s", line, normalized.version, resolvedVersion, messagePlaceholder));
+                }
+            }
+            version = normalized.version;
+        } else if (!preservePlaceholders) {
+            version = resolvedVersion;
+        }
+
+        WrapInstructions instructions = WrapInstructions.parse(url);
+        setBundleVersion(instructions, version, normalized.version, result);
+        for (WrapRule rule : rules) {
+            if (rule.apply(instructions, version)) {
+                result.ruleEdits++;
+            }
+        }
+        if (aligned) {
+            result.versionsAligned++;
+        }
+        return instructions.toLine();
+    }
+
+    /**
+     * Applies the rules to a url whose version can't be derived, with the version of its {@code Bundle-Version} header.
+     */
+    private String applyRules(WrapUrl url, String line, RewriteResult result) {
+        WrapInstructions instructions = WrapInstructions.parse(url);
+        String version = instructions.get(BUNDLE_VERSION_HEADER);
+        if (version == null) {
+            result.invalidVersions++;
+            log.warn(String.format("Line '%s' was ignored because the version of %s can't be derived from its path, declare its Bundle-Version",
+                    line, url.line.substring(url.start, url.mavenUrlEnd)));
+            return line;
+        }
+        for (WrapRule rule : rules) {
+            if (rule.apply(instructions, version)) {
+                result.ruleEdits++;
+            }
+        }
+        return instructions.toLine();
+    }
+
+    private boolean skipArtifact(WrapUrl url, String resolvedVersion, String line, RewriteResult result) {
+        if (manifests == null || !url.maven) {
+            return false;
+        }
+        ManifestInfo manifest = manifests.apply(ArtifactKey.of(url, resolvedVersion));
+        if (manifest == null) {
+            // the manifest couldn't be read, already reported by the resolution stage
+            return failurePolicy == FailurePolicy.SKIP;
+        }
+        if (manifest.isBundle()) {
+            result.osgiBundlesSkipped++;
+            log.info(String.format("Line '%s' was ignored because %s:%s:%s is already the OSGi bundle %s/%s", line,
+                    url.groupId(), url.artifactId(), resolvedVersion, manifest.symbolicName, manifest.bundleVersion));
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Built-in rule, applied before the configured ones.
+     *
+     * @param version the header value to write, may hold placeholders
+     * @param resolvedVersion the value of the header once resolved
+     */
+    private void setBundleVersion(WrapInstructions instructions, String version, String resolvedVersion, RewriteResult result) {
+        String current = instructions.get(BUNDLE_VERSION_HEADER);
+        if (current == null) {
+            instructions.set(BUNDLE_VERSION_HEADER, version);
+            result.headersInserted++;
+        } else if (current.equals(version) || preservePlaceholders && resolvesTo(current, resolvedVersion, result)) {
+            result.headersUnchanged++;
+        } else {
+            instructions.replace(BUNDLE_VERSION_HEADER, version);
+            result.headersReplaced++;
+        }
+    }
+
+    /**
+     * @return {@code true} if the header value holds placeholders resolving to the given version,
+     *         e.g. {@code ${grpc-version}} while the url declares {@code 1.62.2}, the properties it references are
+     *         collected into the result
+     */
+    private boolean resolvesTo(String value, String resolvedVersion, RewriteResult result) {
+        return value.contains("${") && resolvedVersion.equals(properties.interpolate(value, result.resolvedProperties));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,192 @@
+package feature.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Ordered model of the instructions of a {@code wrap:} url, e.g. {@code $overwrite=merge&amp;Export-Package=...}.
+ * <p>
+ * The instructions are split once on {@code &amp;}, or {@code &} in a CDATA section. Entries are offsets in the
+ * line until they are edited, only the values read are copied, so {@link #toLine()} only changes the edited
+ * headers and returns the very same line when nothing was edited. Entries without {@code =}, such as a
+ * {@code ${spi-provider}} placeholder, are kept as they are.
+ */
+final class WrapInstructions {
+
+    /**
+     * Entry {@code text[start, end)}, the text being the line or the edited entry.
+     */
+    private static final class Entry {
+        final String text;
+        final int start;
+        final int end;
+        /** index of the {@code =} in the text, -1 for entries that aren't a {@code header=value} pair */
+        final int equals;
+
+        Entry(String text, int start, int end, int equals) {
+            this.text = text;
+            this.start = start;
+            this.end = end;
+            this.equals = equals;
+        }
+
+        static Entry of(String name, String value) {
+            String text = name + '=' + value;
+            return new Entry(text, 0, text.length(), name.length());
+        }
+
+        boolean hasName(String header) {
+            return equals - start == header.length() && text.regionMatches(start, header, 0, header.length());
+        }
+
+        boolean hasValue(String value) {
+            return end - equals - 1 == value.length() && text.regionMatches(equals + 1, value, 0, value.length());
+        }
+
+        String value() {
+            return text.substring(equals + 1, end);
+        }
+
+        /**
+         * @return {@code true} if the header is one of {@link FeaturesUtilsMojo#OSGI_HEADERS_AFTER_BUNDLE_VEIRSION}
+         */
+        boolean isAfterBundleVersion() {
+            if (equals < 0) {
+                return false;
+            }
+            for (String header : FeaturesUtilsMojo.OSGI_HEADERS_AFTER_BUNDLE_VEIRSION) {
+                if (hasName(header)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private final WrapUrl url;
+    private final List<Entry> entries;
+    private boolean modified;
+
+    private WrapInstructions(WrapUrl url, List<Entry> entries) {
+        this.url = url;
+        this.entries = entries;
+    }
+
+    static WrapInstructions parse(WrapUrl url) {
+        List<Entry> entries = new ArrayList<>(4);
+        if (url.hasInstructions()) {
+            String line = url.line;
+            String separator = url.instructionSeparator();
+            int from = url.instructionsStart + 1;
+            while (from <= url.end) {
+                int next = line.indexOf(separator, from);
+                int to = next < 0 || next > url.end ? url.end : next;
+                int equals = line.indexOf('=', from);
+                if (to > from) {
+                    entries.add(new Entry(line, from, to, equals > from && equals < to ? equals : -1));
+                }
+                from = to + separator.length();
+            }
+        }
+        return new WrapInstructions(url, entries);
+    }
+
+    WrapUrl url() {
+        return url;
+    }
+
+    /**
+     * @return the value of the header, {@code null} if the instructions don't declare it
+     */
+    String get(String header) {
+        int index = indexOf(header);
+        return index < 0 ? null : entries.get(index).value();
+    }
+
+    /**
+     * Sets the value of the header, inserting it when it isn't declared yet. {@code Bundle-*} and the other headers that
+     * aren't listed in {@link FeaturesUtilsMojo#OSGI_HEADERS_AFTER_BUNDLE_VEIRSION} are inserted before the first listed
+     * one, the listed ones are appended.
+     *
+     * @return {@code true} if the instructions changed
+     */
+    boolean set(String header, String value) {
+        if (replace(header, value)) {
+            return true;
+        }
+        if (indexOf(header) >= 0) {
+            return false;
+        }
+        int insertIndex = entries.size();
+        if (!FeaturesUtilsMojo.OSGI_HEADERS_AFTER_BUNDLE_VEIRSION.contains(header)) {
+            for (int i = 0; i < entries.size(); i++) {
+                if (entries.get(i).isAfterBundleVersion()) {
+                    insertIndex = i;
+                    break;
+                }
+            }
+        }
+        entries.add(insertIndex, Entry.of(header, value));
+        modified = true;
+        return true;
+    }
+
+    /**
+     * Replaces the value of the header, only if it is already declared.
+     *
+     * @return {@code true} if the instructions changed
+     */
+    boolean replace(String header, String value) {
+        int index = indexOf(header);
+        if (index < 0 || entries.get(index).hasValue(value)) {
+            return false;
+        }
+        entries.set(index, Entry.of(header, value));
+        modified = true;
+        return true;
+    }
+
+    /**
+     * @param value only remove the header if it has this value, any value if {@code null}
+     * @return {@code true} if the instructions changed
+     */
+    boolean remove(String header, String value) {
+        int index = indexOf(header);
+        if (index < 0 || (value != null && !entries.get(index).hasValue(value))) {
+            return false;
+        }
+        entries.remove(index);
+        modified = true;
+        return true;
+    }
+
+    boolean isModified() {
+        return modified;
+    }
+
+    /**
+     * @return the line with the edited instructions, or the very same line instance if nothing was edited
+     */
+    String toLine() {
+        if (!modified) {
+            return url.line;
+        }
+        String line = url.line;
+        int prefixEnd = url.hasInstructions() ? url.instructionsStart : url.end;
+        StringBuilder sb = new StringBuilder(line.length() + 32).append(line, 0, prefixEnd);
+        for (int i = 0; i < entries.size(); i++) {
+            Entry entry = entries.get(i);
+            sb.append(i == 0 ? "$" : url.instructionSeparator()).append(entry.text, entry.start, entry.end);
+        }
+        return sb.append(line, url.end, line.length()).toString();
+    }
+
+    private int indexOf(String header) {
+        for (int i = 0; i < entries.size(); i++) {
+            if (entries.get(i).hasName(header)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
\ No newline at end of file
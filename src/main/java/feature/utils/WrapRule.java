@@ -0,0 +1,127 @@
+package feature.utils;
+
+import java.util.Locale;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * Declarative edit of the instructions of the wrap bundles, configured in the pom:
+ *
+ * <pre>
+ * &lt;wrapRules&gt;
+ *     &lt;wrapRule&gt;
+ *         &lt;header&gt;Bundle-SymbolicName&lt;/header&gt;
+ *         &lt;value&gt;{groupId}.{artifactId}&lt;/value&gt;
+ *     &lt;/wrapRule&gt;
+ *     &lt;wrapRule&gt;
+ *         &lt;action&gt;remove&lt;/action&gt;
+ *         &lt;header&gt;overwrite&lt;/header&gt;
+ *         &lt;value&gt;merge&lt;/value&gt;
+ *     &lt;/wrapRule&gt;
+ * &lt;/wrapRules&gt;
+ * </pre>
+ *
+ * The value may hold the {@code {groupId}}, {@code {artifactId}} and {@code {version}} tokens of the wrapped
+ * artifact, {@code {version}} being the value of its {@code Bundle-Version} header.
+ */
+public class WrapRule {
+
+    enum Action {
+        /** sets the header, inserting it if it isn't declared */
+        SET,
+        /** replaces the value of the header, only if it is declared */
+        REPLACE,
+        /** removes the header, only if it has the given value when one is given */
+        REMOVE
+    }
+
+    private String header;
+    private String value;
+    private Action action = Action.SET;
+    /** {@code groupId:artifactId} glob of the artifacts the rule applies to, all of them if not set */
+    private String artifact;
+    private Pattern artifactPattern;
+
+    public WrapRule() {
+    }
+
+    WrapRule(Action action, String header, String value, String artifact) {
+        this.action = action;
+        this.header = header;
+        this.value = value;
+        setArtifact(artifact);
+    }
+
+    public void setHeader(String header) {
+        this.header = header;
+    }
+
+    public void setValue(String value) {
+        this.value = value;
+    }
+
+    public void setAction(String action) {
+        this.action = Action.valueOf(action.trim().toUpperCase(Locale.ROOT));
+    }
+
+    public void setArtifact(String artifact) {
+        this.artifact = artifact;
+        this.artifactPattern = null;
+    }
+
+    /**
+     * Compiles the artifact pattern through the given function, e.g. a cache shared by the executions of the build.
+     */
+    void compile(Function<String, Pattern> patterns) {
+        artifactPattern = artifact == null ? null : patterns.apply(artifact.trim());
+    }
+
+    /**
+     * @return why the rule can't be applied, {@code null} if it is valid
+     */
+    String validate() {
+        if (header == null || header.trim().isEmpty()) {
+            return "the header of a wrap rule is mandatory";
+        }
+        if (action != Action.REMOVE && value == null) {
+            return String.format("the %s rule of header %s needs a value", action, header);
+        }
+        return null;
+    }
+
+    /**
+     * @param version value of the {@code Bundle-Version} header of the artifact
+     * @return {@code true} if the instructions changed
+     */
+    boolean apply(WrapInstructions instructions, String version) {
+        WrapUrl url = instructions.url();
+        if (artifact != null) {
+            if (artifactPattern == null) {
+                compile(FeaturesIndex::toPattern);
+            }
+            if (!artifactPattern.matcher(url.groupId() + ':' + url.artifactId()).matches()) {
+                return false;
+            }
+        }
+        if (!url.maven && value != null && value.contains("{groupId}")) {
+            // non maven urls have no groupId
+            return false;
+        }
+        String expanded = value == null ? null : value.replace("{groupId}", url.groupId())
+                .replace("{artifactId}", url.artifactId())
+                .replace("{version}", version);
+        switch (action) {
+        case SET:
+            return instructions.set(header, expanded);
+        case REPLACE:
+            return instructions.replace(header, expanded);
+        default:
+            return instructions.remove(header, expanded);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return action + " " + header + (value == null ? "" : "=" + value) + (artifact == null ? "" : " on " + artifact);
+    }
+}
\ No newline at end of file
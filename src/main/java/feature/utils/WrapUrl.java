@@ -0,0 +1,294 @@
+package feature.utils;
+
+/**
+ * Single cursor tokenizer for the {@code wrap:} entry of a bundle element.
+ * <p>
+ * The text, a line or a whole bundle element spanning several lines, is walked once from the {@code wrap:}
+ * prefix up to the end of the url, recording the offsets of the groupId, artifactId, version and wrap
+ * instructions. No intermediate Strings are created while tokenizing. All start offsets are inclusive,
+ * all end offsets are exclusive.
+ * <p>
+ * The url ends with the element, the CDATA section holding it, its line or the whitespace before them.
+ * Instructions are separated by {@code &amp;}, or by {@code &} in a CDATA section. Inner urls other than
+ * {@code mvn:}, e.g. {@code file:} or {@code http:}, only have an artifactId and a version when they follow
+ * the maven repository layout {@code .../artifactId/version/artifactId-version[-classifier].type}.
+ */
+final class WrapUrl {
+
+    static final String WRAP = "wrap:";
+    static final String WRAP_MVN = "wrap:mvn:";
+    private static final String CDATA_START = "<![CDATA[";
+    private static final String CDATA_END = "]]>";
+
+    final String line;
+    final int start;
+    final int groupIdStart;
+    final int groupIdEnd;
+    final int artifactIdStart;
+    final int artifactIdEnd;
+    /** -1 when the version of a non maven url can't be derived */
+    final int versionStart;
+    final int versionEnd;
+    /** end of the inner url, after the optional type and classifier of a maven url */
+    final int mavenUrlEnd;
+    /** index of the {@code $} separating the inner url from the instructions, -1 when there are none */
+    final int instructionsStart;
+    final int end;
+    /** {@code true} for {@code wrap:mvn:} urls */
+    final boolean maven;
+    /** {@code true} when the url is in a CDATA section, its instructions aren't escaped */
+    final boolean cdata;
+
+    private WrapUrl(String line, int start, int groupIdStart, int groupIdEnd, int artifactIdStart, int artifactIdEnd, int versionStart,
+            int versionEnd, int mavenUrlEnd, int instructionsStart, int end, boolean maven, boolean cdata) {
+        this.line = line;
+        this.start = start;
+        this.groupIdStart = groupIdStart;
+        this.groupIdEnd = groupIdEnd;
+        this.artifactIdStart = artifactIdStart;
+        this.artifactIdEnd = artifactIdEnd;
+        this.versionStart = versionStart;
+        this.versionEnd = versionEnd;
+        this.mavenUrlEnd = mavenUrlEnd;
+        this.instructionsStart = instructionsStart;
+        this.end = end;
+        this.maven = maven;
+        this.cdata = cdata;
+    }
+
+    /**
+     * @return the tokenized wrap url or {@code null} if the text doesn't hold a complete {@code wrap:} entry
+     */
+    static WrapUrl parse(String line) {
+        int start = indexOfWrap(line);
+        if (start < 0) {
+            return null;
+        }
+        int cdataStart = line.lastIndexOf(CDATA_START, start);
+        boolean cdata = cdataStart >= 0 && line.lastIndexOf(CDATA_END, start) < cdataStart;
+        int length = urlEnd(line, start, cdata);
+        return line.startsWith(WRAP_MVN, start) ? parseMaven(line, start, length, cdata) : parseOther(line, start, length, cdata);
+    }
+
+    private static WrapUrl parseMaven(String line, int start, int length, boolean cdata) {
+        int groupIdStart = start + WRAP_MVN.length();
+        int groupIdEnd = indexOfSegmentEnd(line, groupIdStart, length);
+        if (groupIdEnd >= length || line.charAt(groupIdEnd) != '/') {
+            return null;
+        }
+        int artifactIdEnd = indexOfSegmentEnd(line, groupIdEnd + 1, length);
+        if (artifactIdEnd >= length || line.charAt(artifactIdEnd) != '/') {
+            return null;
+        }
+        int versionStart = artifactIdEnd + 1;
+
+        // the version ends with the type/classifier segments or the instructions
+        int cursor = skipPlaceholders(line, versionStart, length, true);
+        if (cursor < 0) {
+            return null;
+        }
+        int versionEnd = cursor;
+        if (versionEnd == versionStart) {
+            return null;
+        }
+
+        // skip the optional type and classifier
+        while (cursor < length && line.charAt(cursor) != '$' && !Character.isWhitespace(line.charAt(cursor))) {
+            cursor++;
+        }
+        return withInstructions(line, start, groupIdStart, groupIdEnd, groupIdEnd + 1, artifactIdEnd, versionStart, versionEnd, cursor, length,
+                true, cdata);
+    }
+
+    private static WrapUrl parseOther(String line, int start, int length, boolean cdata) {
+        int innerStart = start + WRAP.length();
+        int mavenUrlEnd = skipPlaceholders(line, innerStart, length, false);
+        if (mavenUrlEnd <= innerStart) {
+            return null;
+        }
+
+        // .../artifactId/version/artifactId-version[-classifier].type
+        int artifactIdStart = -1;
+        int artifactIdEnd = -1;
+        int versionStart = -1;
+        int versionEnd = -1;
+        int fileStart = Math.max(innerStart, line.lastIndexOf('/', mavenUrlEnd - 1) + 1);
+        int versionSlash = fileStart > innerStart + 1 ? line.lastIndexOf('/', fileStart - 2) : -1;
+        int artifactIdSlash = versionSlash > innerStart ? line.lastIndexOf('/', versionSlash - 1) : -1;
+        if (artifactIdSlash >= innerStart && versionSlash - artifactIdSlash > 1 && fileStart - 1 - versionSlash > 1) {
+            int artifactIdLength = versionSlash - artifactIdSlash - 1;
+            int versionLength = fileStart - 1 - versionSlash - 1;
+            int suffix = fileStart + artifactIdLength + 1 + versionLength;
+            if (suffix < mavenUrlEnd
+                    && line.regionMatches(fileStart, line, artifactIdSlash + 1, artifactIdLength)
+                    && line.charAt(fileStart + artifactIdLength) == '-'
+                    && line.regionMatches(fileStart + artifactIdLength + 1, line, versionSlash + 1, versionLength)
+                    && (line.charAt(suffix) == '.' || line.charAt(suffix) == '-')) {
+                artifactIdStart = artifactIdSlash + 1;
+                artifactIdEnd = versionSlash;
+                versionStart = versionSlash + 1;
+                versionEnd = fileStart - 1;
+            }
+        }
+        if (versionStart < 0) {
+            // no maven coordinates, the artifactId is the file name
+            artifactIdStart = fileStart;
+            artifactIdEnd = mavenUrlEnd;
+        }
+        return withInstructions(line, start, innerStart, innerStart, artifactIdStart, artifactIdEnd, versionStart, versionEnd, mavenUrlEnd,
+                length, false, cdata);
+    }
+
+    private static WrapUrl withInstructions(String line, int start, int groupIdStart, int groupIdEnd, int artifactIdStart, int artifactIdEnd,
+            int versionStart, int versionEnd, int mavenUrlEnd, int length, boolean maven, boolean cdata) {
+        int instructionsStart = -1;
+        int end = mavenUrlEnd;
+        if (mavenUrlEnd < length && line.charAt(mavenUrlEnd) == '$') {
+            instructionsStart = mavenUrlEnd;
+            end = length;
+            // whitespace before the end of the element isn't part of the instructions
+            while (end > instructionsStart + 1 && Character.isWhitespace(line.charAt(end - 1))) {
+                end--;
+            }
+        }
+        return new WrapUrl(line, start, groupIdStart, groupIdEnd, artifactIdStart, artifactIdEnd, versionStart, versionEnd, mavenUrlEnd,
+                instructionsStart, end, maven, cdata);
+    }
+
+    /**
+     * @return the index of the first {@code wrap:} followed by the scheme of an inner url, -1 if there is none
+     */
+    private static int indexOfWrap(String line) {
+        int start = line.indexOf(WRAP);
+        while (start >= 0) {
+            int cursor = start + WRAP.length();
+            while (cursor < line.length() && (Character.isLetterOrDigit(line.charAt(cursor)) || line.charAt(cursor) == '+'
+                    || line.charAt(cursor) == '-' || line.charAt(cursor) == '.')) {
+                cursor++;
+            }
+            if (cursor > start + WRAP.length() && cursor < line.length() && line.charAt(cursor) == ':') {
+                return start;
+            }
+            start = line.indexOf(WRAP, start + 1);
+        }
+        return -1;
+    }
+
+    /**
+     * @return the end of the text the url may span: the end of its element, CDATA section or line
+     */
+    private static int urlEnd(String line, int from, boolean cdata) {
+        int length = line.length();
+        for (int i = from; i < length; i++) {
+            char c = line.charAt(i);
+            if (c == '\n' || c == '\r' || (cdata ? c == ']' && line.startsWith(CDATA_END, i) : c == '<')) {
+                return i;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * @param version stop at the {@code /} starting the type of a maven url
+     * @return the index of the {@code $} starting the instructions or of the whitespace or end ending the url,
+     *         -1 if a placeholder isn't closed
+     */
+    private static int skipPlaceholders(String line, int from, int length, boolean version) {
+        int cursor = from;
+        while (cursor < length) {
+            char c = line.charAt(cursor);
+            if (c == '$' && cursor + 1 < length && line.charAt(cursor + 1) == '{') {
+                // placeholder, skip it as a whole
+                int placeholderEnd = line.indexOf('}', cursor + 2);
+                if (placeholderEnd < 0 || placeholderEnd >= length) {
+                    return -1;
+                }
+                cursor = placeholderEnd + 1;
+                continue;
+            }
+            if ((version && c == '/') || c == '$' || Character.isWhitespace(c)) {
+                break;
+            }
+            cursor++;
+        }
+        return cursor;
+    }
+
+    private static int indexOfSegmentEnd(String line, int from, int length) {
+        int i = from;
+        while (i < length) {
+            char c = line.charAt(i);
+            if (c == '/' || c == '$') {
+                break;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * @return the groupId, empty for a non maven url
+     */
+    String groupId() {
+        return line.substring(groupIdStart, groupIdEnd);
+    }
+
+    String artifactId() {
+        return line.substring(artifactIdStart, artifactIdEnd);
+    }
+
+    /**
+     * @return {@code false} if the url isn't a maven url and doesn't follow the maven repository layout
+     */
+    boolean hasVersion() {
+        return versionStart >= 0;
+    }
+
+    String version() {
+        return line.substring(versionStart, versionEnd);
+    }
+
+    /**
+     * @return the type of the artifact, {@code null} if the url doesn't declare one
+     */
+    String type() {
+        if (!maven || versionEnd >= mavenUrlEnd) {
+            return null;
+        }
+        int typeEnd = line.indexOf('/', versionEnd + 1);
+        return line.substring(versionEnd + 1, typeEnd < 0 || typeEnd > mavenUrlEnd ? mavenUrlEnd : typeEnd);
+    }
+
+    /**
+     * @return the classifier of the artifact, {@code null} if the url doesn't declare one
+     */
+    String classifier() {
+        if (!maven || versionEnd >= mavenUrlEnd) {
+            return null;
+        }
+        int typeEnd = line.indexOf('/', versionEnd + 1);
+        return typeEnd < 0 || typeEnd >= mavenUrlEnd ? null : line.substring(typeEnd + 1, mavenUrlEnd);
+    }
+
+    boolean hasInstructions() {
+        return instructionsStart >= 0;
+    }
+
+    /**
+     * @return {@code &amp;}, or {@code &} in a CDATA section
+     */
+    String instructionSeparator() {
+        return cdata ? "&" : WrapBundleVersionRewriter.INSTRUCTION_SEPARATOR;
+    }
+
+    /**
+     * @return {@code true} if the version holds placeholders, e.g. {@code ${grpc-version}} or {@code ${major}.1}
+     */
+    boolean hasVersionPlaceholder() {
+        if (!hasVersion()) {
+            return false;
+        }
+        int index = line.indexOf("${", versionStart);
+        return index >= 0 && index < versionEnd;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,191 @@
+package feature.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.stream.Stream;
+
+import feature.utils.ArtifactResolutionStage.FailurePolicy;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.apache.maven.repository.internal.MavenRepositorySystemUtils;
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.repository.LocalRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ArtifactManifestResolverTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Path localRepository;
+    private RepositorySystem repositorySystem;
+    private DefaultRepositorySystemSession repositorySession;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        localRepository = tempDir.resolve("repository");
+        installJar("org.apache.olingo", "odata-server-core", "5.0.0", null);
+        installJar("com.google.guava", "guava", "33.2.0-jre", "com.google.guava");
+
+        repositorySystem = MavenRepositorySystemUtils.newServiceLocator().getService(RepositorySystem.class);
+        repositorySession = MavenRepositorySystemUtils.newSession();
+        repositorySession.setOffline(true);
+        repositorySession.setLocalRepositoryManager(repositorySystem.newLocalRepositoryManager(repositorySession, new LocalRepository(localRepository.toFile())));
+    }
+
+    static Path installJar(Path localRepository, String groupId, String artifactId, String version, String symbolicName) throws Exception {
+        Path directory = localRepository.resolve(groupId.replace('.', '/')).resolve(artifactId).resolve(version);
+        Files.createDirectories(directory);
+        Path jar = directory.resolve(artifactId + "-" + version + ".jar");
+
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        if (symbolicName != null) {
+            manifest.getMainAttributes().putValue("Bundle-SymbolicName", symbolicName + ";singleton:=true");
+            manifest.getMainAttributes().putValue("Bundle-Version", "33.2.0.jre");
+        }
+        try (OutputStream out = new JarOutputStream(Files.newOutputStream(jar), manifest)) {
+            // manifest only
+        }
+        return jar;
+    }
+
+    private Path installJar(String groupId, String artifactId, String version, String symbolicName) throws Exception {
+        return installJar(localRepository, groupId, artifactId, version, symbolicName);
+    }
+
+    private ArtifactManifestResolver newResolver(ManifestCache cache) {
+        return new ArtifactManifestResolver(repositorySystem, repositorySession, Collections.emptyList(), cache);
+    }
+
+    @Test
+    void resolveTest() throws Exception {
+        Path cacheFile = tempDir.resolve("manifest-cache.properties");
+        ManifestCache cache = new ManifestCache(cacheFile);
+        ArtifactManifestResolver resolver = newResolver(cache);
+
+        ManifestInfo guava = resolver.resolve("com.google.guava", "guava", null, null, "33.2.0-jre");
+        assertTrue(guava.isBundle());
+        assertEquals("com.google.guava", guava.symbolicName);
+        assertEquals("33.2.0.jre", guava.bundleVersion);
+
+        ManifestInfo olingo = resolver.resolve("org.apache.olingo", "odata-server-core", null, null, "5.0.0");
+        assertFalse(olingo.isBundle());
+        assertNull(olingo.bundleVersion);
+        cache.save();
+
+        // a new build uses the cached headers without opening the jar again
+        Path jar = localRepository.resolve("com/google/guava/guava/33.2.0-jre/guava-33.2.0-jre.jar");
+        Files.write(jar.resolveSibling("guava-33.2.0-jre.jar.sha1"), (new ManifestCache(cacheFile).checksum(jar) + "  guava-33.2.0-jre.jar").getBytes(StandardCharsets.US_ASCII));
+        ManifestCache reloaded = new ManifestCache(cacheFile);
+        assertEquals("com.google.guava", reloaded.get(reloaded.checksum(jar)).symbolicName);
+
+        // builds sharing the cache replace it as a whole, keeping the entries of each other
+        ManifestCache first = new ManifestCache(cacheFile);
+        ManifestCache second = new ManifestCache(cacheFile);
+        first.put("1111", new ManifestInfo("first", "1.0.0", null));
+        second.put("2222", new ManifestInfo("second", "2.0.0", null));
+        first.save();
+        second.save();
+        ManifestCache merged = new ManifestCache(cacheFile);
+        assertEquals("first", merged.get("1111").symbolicName);
+        assertEquals("second", merged.get("2222").symbolicName);
+        try (Stream<Path> siblings = Files.list(tempDir)) {
+            assertEquals(1, siblings.filter(path -> path.getFileName().toString().startsWith("manifest-cache")).count());
+        }
+    }
+
+    @Test
+    void resolutionStageTest() throws Exception {
+        ArtifactKey guava = new ArtifactKey("com.google.guava", "guava", null, null, "33.2.0-jre");
+        ArtifactKey olingo = new ArtifactKey("org.apache.olingo", "odata-server-core", null, null, "5.0.0");
+        ArtifactKey kie = new ArtifactKey("org.kie", "kie-api", null, null, "8.44.0.Final");
+        List<ArtifactKey> artifacts = Arrays.asList(guava, olingo, kie);
+
+        ArtifactResolutionStage stage = new ArtifactResolutionStage(newResolver(new ManifestCache(tempDir.resolve("manifest-cache.properties"))),
+                2, 10_000, FailurePolicy.WARN, new SystemStreamLog());
+        Map<ArtifactKey, ManifestInfo> manifests = stage.resolve(artifacts);
+        assertEquals(3, manifests.size());
+        assertTrue(manifests.get(guava).isBundle());
+        assertFalse(manifests.get(olingo).isBundle());
+        assertNull(manifests.get(kie));
+
+        ArtifactResolutionStage failingStage = new ArtifactResolutionStage(newResolver(new ManifestCache(tempDir.resolve("manifest-cache.properties"))),
+                2, 10_000, FailurePolicy.FAIL, new SystemStreamLog());
+        assertThrows(MojoExecutionException.class, () -> failingStage.resolve(artifacts));
+    }
+
+    @Test
+    void onDemandTest() throws Exception {
+        ArtifactKey guava = new ArtifactKey("com.google.guava", "guava", null, null, "33.2.0-jre");
+        ArtifactKey olingo = new ArtifactKey("org.apache.olingo", "odata-server-core", null, null, "5.0.0");
+        ArtifactKey kie = new ArtifactKey("org.kie", "kie-api", null, null, "8.44.0.Final");
+        ArtifactResolutionStage stage = new ArtifactResolutionStage(newResolver(new ManifestCache(tempDir.resolve("manifest-cache.properties"))),
+                2, 10_000, FailurePolicy.WARN, new SystemStreamLog());
+
+        SessionCache.Memo<ArtifactKey, ManifestInfo> inspected = new SessionCache.Memo<>("manifests");
+        try (ArtifactResolutionStage.OnDemand manifests = stage.onDemand(inspected)) {
+            assertTrue(manifests.apply(guava).isBundle());
+            assertTrue(manifests.apply(guava).isBundle());
+            assertNull(manifests.apply(kie));
+            assertNull(manifests.apply(kie));
+            // only the artifacts looked up are resolved, once
+            assertEquals(2, manifests.resolved());
+            assertEquals(1, manifests.failed());
+            assertTrue(inspected.peek(guava).isBundle());
+            assertNull(inspected.peek(olingo));
+        }
+
+        ArtifactResolutionStage failingStage = new ArtifactResolutionStage(newResolver(new ManifestCache(tempDir.resolve("manifest-cache.properties"))),
+                2, 10_000, FailurePolicy.FAIL, new SystemStreamLog());
+        try (ArtifactResolutionStage.OnDemand manifests = failingStage.onDemand(new SessionCache.Memo<>("manifests"))) {
+            assertFalse(manifests.apply(olingo).isBundle());
+            assertThrows(IllegalStateException.class, () -> manifests.apply(kie));
+            assertThrows(IllegalStateException.class, () -> manifests.apply(kie));
+        }
+    }
+
+    @Test
+    void bundlesAreNotWrappedAgainTest() throws Exception {
+        ArtifactKey guava = new ArtifactKey("com.google.guava", "guava", null, null, "33.2.0-jre");
+        ArtifactKey olingo = new ArtifactKey("org.apache.olingo", "odata-server-core", null, null, "5.0.0");
+        ArtifactKey kie = new ArtifactKey("org.kie", "kie-api", null, null, "8.44.0.Final");
+        Map<ArtifactKey, ManifestInfo> manifests = new ArtifactResolutionStage(newResolver(new ManifestCache(tempDir.resolve("manifest-cache.properties"))),
+                2, 10_000, FailurePolicy.WARN, new SystemStreamLog()).resolve(Arrays.asList(guava, olingo, kie));
+        RewriteResult result = new RewriteResult(tempDir);
+
+        WrapBundleVersionRewriter rewriter = new WrapBundleVersionRewriter(new SystemStreamLog(), new PropertyResolver(new Properties()), new VersionNormalizer(), VersionRepairs.CLEAN_ONLY, manifests::get, FailurePolicy.WARN, true, Collections.emptyList());
+        String guavaLine = "<bundle>wrap:mvn:com.google.guava/guava/33.2.0-jre</bundle>";
+        assertEquals(guava, rewriter.artifactKey(guavaLine));
+        assertEquals(guavaLine, rewriter.rewrite(guavaLine, result));
+        assertEquals("<bundle>wrap:mvn:org.apache.olingo/odata-server-core/5.0.0$Bundle-Version=5.0.0</bundle>",
+                rewriter.rewrite("<bundle>wrap:mvn:org.apache.olingo/odata-server-core/5.0.0</bundle>", result));
+        // unresolvable artifacts are processed as before
+        String kieLine = "<bundle>wrap:mvn:org.kie/kie-api/8.44.0.Final</bundle>";
+        assertEquals("<bundle>wrap:mvn:org.kie/kie-api/8.44.0.Final$Bundle-Version=8.44.0.Final</bundle>", rewriter.rewrite(kieLine, result));
+
+        // unless they have to be skipped
+        rewriter = new WrapBundleVersionRewriter(new SystemStreamLog(), new PropertyResolver(new Properties()), new VersionNormalizer(), VersionRepairs.CLEAN_ONLY, manifests::get, FailurePolicy.SKIP, true, Collections.emptyList());
+        assertEquals(kieLine, rewriter.rewrite(kieLine, result));
+    }
+}
\ No newline at end of file
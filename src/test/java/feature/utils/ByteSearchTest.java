@@ -0,0 +1,35 @@
+package feature.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+public class ByteSearchTest {
+
+    @Test
+    void indexOfTest() {
+        byte[] pattern = "wrap:".getBytes(StandardCharsets.US_ASCII);
+        // every offset of the match in a word and every tail length
+        for (int length = 0; length < 40; length++) {
+            for (int at = 0; at + pattern.length <= length; at++) {
+                byte[] bytes = new byte[length];
+                Arrays.fill(bytes, (byte) 'x');
+                // partial matches and bytes with the high bit set before the match
+                if (at >= 4) {
+                    bytes[at - 4] = 'w';
+                    bytes[at - 3] = (byte) 0xF7;
+                }
+                System.arraycopy(pattern, 0, bytes, at, pattern.length);
+                assertEquals(at, ByteSearch.indexOf(bytes, 0, length, pattern), "wrap: at " + at + " of " + length);
+                assertEquals(at, ByteSearch.indexOf(bytes, 0, length, (byte) ':') - 4);
+                assertEquals(at, ByteSearch.lastIndexOf(bytes, 0, length, pattern));
+                assertEquals(-1, ByteSearch.indexOf(bytes, at + 1, length, pattern));
+                assertEquals(-1, ByteSearch.indexOf(bytes, 0, at + pattern.length - 1, pattern));
+            }
+        }
+        assertEquals(-1, ByteSearch.indexOf(new byte[0], 0, 0, (byte) '\n'));
+    }
+}
\ No newline at end of file
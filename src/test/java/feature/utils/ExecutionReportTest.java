@@ -0,0 +1,62 @@
+package feature.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ExecutionReportTest {
+
+    @Test
+    void reportTest() throws Exception {
+        ExecutionReport report = new ExecutionReport("ensure-wrap-bundle-version", "os.local.esb:features:1.0.0");
+        RewriteResult result = new RewriteResult(Paths.get("camel-features.xml"));
+        result.linesScanned = 13;
+        result.linesChanged = 6;
+        result.wrapBundles = 6;
+        result.headersInserted = 5;
+        result.headersReplaced = 1;
+        result.versionsAligned = 2;
+        result.written = true;
+        report.add(result);
+        report.addUpToDate(Paths.get("camel,aws-features.xml"));
+        report.finish();
+
+        assertTrue(report.summary().startsWith("ensure-wrap-bundle-version: 2 files (1 updated, 1 unchanged since last build, 0 failed), 13 lines, 6 wrap bundles (5 inserted, 1 replaced"));
+
+        StringWriter csv = new StringWriter();
+        report.writeCsv(csv);
+        String[] rows = csv.toString().split("\n");
+        assertEquals(3, rows.length);
+        assertTrue(rows[0].startsWith("file,status,linesScanned,linesChanged,wrapBundles,headersInserted,headersReplaced"));
+        assertTrue(rows[1].startsWith("camel-features.xml,updated,13,6,6,5,1,0,"));
+        assertTrue(rows[2].startsWith("\"camel,aws-features.xml\",upToDate,0,"));
+        assertTrue(rows[0].contains(",ruleEdits,versionsAligned,bytesRead,"));
+        assertTrue(rows[1].contains(",0,2,0,0,"));
+
+        StringWriter json = new StringWriter();
+        report.writeJson(json);
+        assertTrue(json.toString().contains("\"totals\": {\"status\": \"total\", \"linesScanned\": 13, \"linesChanged\": 6"));
+        assertTrue(json.toString().contains("{\"file\": \"camel-features.xml\", \"status\": \"updated\""));
+        String totals = json.toString().substring(json.toString().indexOf("\"totals\""));
+        assertTrue(totals.substring(0, totals.indexOf('\n')).contains("\"ruleEdits\": 0, \"versionsAligned\": 2, \"bytesRead\""));
+    }
+
+    @Test
+    void executionsReportsTest(@TempDir Path reportDirectory) throws Exception {
+        for (String executionId : new String[] { "default", "camel-features" }) {
+            ExecutionReport report = new ExecutionReport("ensure-wrap-bundle-version", "os.local.esb:features:1.0.0");
+            report.finish();
+            report.write(reportDirectory, executionId);
+        }
+        assertTrue(Files.isRegularFile(reportDirectory.resolve("ensure-wrap-bundle-version-default-report.json")));
+        assertTrue(Files.isRegularFile(reportDirectory.resolve("ensure-wrap-bundle-version-camel-features-report.json")));
+        assertTrue(Files.isRegularFile(reportDirectory.resolve("ensure-wrap-bundle-version-camel-features-report.csv")));
+    }
+}
\ No newline at end of file
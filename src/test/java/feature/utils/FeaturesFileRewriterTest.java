@@ -0,0 +1,369 @@
+package feature.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import feature.utils.ArtifactResolutionStage.FailurePolicy;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class FeaturesFileRewriterTest {
+
+    private static final String FEATURES = String.join("\n",
+            "<features name=\"test\">",
+            "    <feature name=\"camel-google\" version=\"${camel-version}\">",
+            "        <bundle>wrap:mvn:org.kie/kie-api/8.44.0.Final</bundle>",
+            "    </feature>",
+            "    <feature name=\"camel-google-mail\" version=\"${camel-version}\">",
+            "        <bundle dependency='true'>mvn:org.apache.qpid/qpid-jms-client/${qpid-version}</bundle>",
+            "        <bundle dependency='true'>wrap:mvn:org.apache.olingo/odata-server-core/5.0.0</bundle>",
+            "        <bundle dependency='true'>wrap:mvn:org.apache.olingo/odata-server-core/5.0.0$overwrite=merge&amp;Export-Package=org.apache.olingo.*;version=5.0.0</bundle>",
+            "        <bundle dependency='true'>wrap:mvn:org.apache.olingo/odata-server-core/5.0.0$Bundle-Version=4.4.4</bundle>",
+            "        <bundle dependency='true'>wrap:mvn:io.grpc/grpc-core/${grpc-version}$${spi-provider}</bundle>",
+            "        <bundle dependency='true'>wrap:mvn:com.google.guava/guava/33.2.0-jre$overwrite=merge</bundle>",
+            "    </feature>",
+            "</features>",
+            "");
+
+    @TempDir
+    Path tempDir;
+
+    private FeaturesFileRewriter newRewriter() {
+        Properties properties = new Properties();
+        properties.setProperty("grpc-version", "1.62.2");
+        return new FeaturesFileRewriter(new WrapBundleVersionRewriter(new SystemStreamLog(), properties));
+    }
+
+    @Test
+    void rewriteAllFeaturesTest() throws Exception {
+        Path file = tempDir.resolve("features.xml");
+        Files.write(file, FEATURES.getBytes(StandardCharsets.UTF_8));
+
+        RewriteResult result = newRewriter().rewrite(file, null);
+        assertEquals(13, result.linesScanned);
+        assertEquals(6, result.linesChanged);
+        assertEquals(6, result.wrapBundles);
+        assertEquals(5, result.headersInserted);
+        assertEquals(1, result.headersReplaced);
+        assertEquals(1, result.versionsCleaned);
+        assertEquals(FEATURES.length(), result.bytesRead);
+        assertEquals(Files.size(file), result.bytesWritten);
+
+        String[] lines = new String(Files.readAllBytes(file), StandardCharsets.UTF_8).split("\n");
+        assertEquals("        <bundle>wrap:mvn:org.kie/kie-api/8.44.0.Final$Bundle-Version=8.44.0.Final</bundle>", lines[2]);
+        assertEquals("        <bundle dependency='true'>mvn:org.apache.qpid/qpid-jms-client/${qpid-version}</bundle>", lines[5]);
+        assertEquals("        <bundle dependency='true'>wrap:mvn:org.apache.olingo/odata-server-core/5.0.0$Bundle-Version=5.0.0</bundle>", lines[6]);
+        assertEquals("        <bundle dependency='true'>wrap:mvn:org.apache.olingo/odata-server-core/5.0.0$overwrite=merge&amp;Bundle-Version=5.0.0&amp;Export-Package=org.apache.olingo.*;version=5.0.0</bundle>", lines[7]);
+        assertEquals("        <bundle dependency='true'>wrap:mvn:org.apache.olingo/odata-server-core/5.0.0$Bundle-Version=5.0.0</bundle>", lines[8]);
+        assertEquals("        <bundle dependency='true'>wrap:mvn:io.grpc/grpc-core/${grpc-version}$${spi-provider}&amp;Bundle-Version=${grpc-version}</bundle>", lines[9]);
+        assertEquals("        <bundle dependency='true'>wrap:mvn:com.google.guava/guava/33.2.0-jre$overwrite=merge&amp;Bundle-Version=33.2.0.jre</bundle>", lines[10]);
+    }
+
+    @Test
+    void rewriteTargetFeatureTest() throws Exception {
+        Path file = tempDir.resolve("features.xml");
+        Files.write(file, FEATURES.getBytes(StandardCharsets.UTF_8));
+
+        RewriteResult result = newRewriter().rewrite(file, Arrays.asList("camel-google"));
+        assertTrue(result.featureFound);
+        assertEquals(1, result.linesChanged);
+
+        // exact name, camel-google-mail is left alone
+        String[] lines = new String(Files.readAllBytes(file), StandardCharsets.UTF_8).split("\n");
+        assertEquals("        <bundle>wrap:mvn:org.kie/kie-api/8.44.0.Final$Bundle-Version=8.44.0.Final</bundle>", lines[2]);
+        assertEquals("        <bundle dependency='true'>wrap:mvn:org.apache.olingo/odata-server-core/5.0.0</bundle>", lines[6]);
+    }
+
+    @Test
+    void rewriteTargetFeaturePatternTest() throws Exception {
+        Path file = tempDir.resolve("features.xml");
+        Files.write(file, FEATURES.getBytes(StandardCharsets.UTF_8));
+
+        RewriteResult result = newRewriter().rewrite(file, Arrays.asList("camel-aws", "*-mail"));
+        assertEquals(Arrays.asList("camel-aws"), result.missingFeatures);
+        assertEquals(5, result.linesChanged);
+
+        String[] lines = new String(Files.readAllBytes(file), StandardCharsets.UTF_8).split("\n");
+        assertEquals("        <bundle>wrap:mvn:org.kie/kie-api/8.44.0.Final</bundle>", lines[2]);
+        assertEquals("        <bundle dependency='true'>wrap:mvn:org.apache.olingo/odata-server-core/5.0.0$Bundle-Version=5.0.0</bundle>", lines[6]);
+    }
+
+    @Test
+    void missingTargetFeatureTest() throws Exception {
+        Path file = tempDir.resolve("features.xml");
+        Files.write(file, FEATURES.getBytes(StandardCharsets.UTF_8));
+
+        RewriteResult result = newRewriter().rewrite(file, Arrays.asList("camel-aws"));
+        assertFalse(result.featureFound);
+        assertEquals(FEATURES, new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void rewriteCompactFeaturesTest() throws Exception {
+        String features = "<features><feature name=\"a\"><bundle>wrap:mvn:g/a/1.0</bundle></feature>\n"
+                + "<feature name=\"b\"><bundle>wrap:mvn:g/b/1.0</bundle></feature>\n</features>\n";
+        Path file = tempDir.resolve("features.xml");
+        Files.write(file, features.getBytes(StandardCharsets.UTF_8));
+
+        RewriteResult result = newRewriter().rewrite(file, Arrays.asList("b"));
+        assertTrue(result.missingFeatures.isEmpty());
+        assertEquals(1, result.linesChanged);
+        assertEquals(features.replace("g/b/1.0</bundle>", "g/b/1.0$Bundle-Version=1.0</bundle>"), new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void lineEndingsArePreservedTest() throws Exception {
+        Path file = tempDir.resolve("features.xml");
+        String crlf = "<feature name=\"a\">\r\n<bundle>wrap:mvn:org.kie/kie-api/8.44.0.Final</bundle>\r\n</feature>";
+        Files.write(file, crlf.getBytes(StandardCharsets.UTF_8));
+
+        newRewriter().rewrite(file, null);
+        assertEquals("<feature name=\"a\">\r\n<bundle>wrap:mvn:org.kie/kie-api/8.44.0.Final$Bundle-Version=8.44.0.Final</bundle>\r\n</feature>",
+                new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void unchangedFileIsNotWrittenTest() throws Exception {
+        Path file = tempDir.resolve("features.xml");
+        Files.write(file, FEATURES.getBytes(StandardCharsets.UTF_8));
+        newRewriter().rewrite(file, null);
+
+        FileTime lastModified = FileTime.fromMillis(0);
+        Files.setLastModifiedTime(file, lastModified);
+        RewriteResult result = newRewriter().rewrite(file, null);
+        assertEquals(0, result.linesChanged);
+        assertFalse(result.written);
+        assertEquals(0, result.bytesWritten);
+        assertEquals(lastModified, Files.getLastModifiedTime(file));
+        assertEquals(IncrementalState.hashContent(file), result.contentHash);
+        assertEquals("[grpc-version]", result.resolvedProperties.toString());
+        try (Stream<Path> files = Files.list(tempDir)) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    @Test
+    void encodingAndPermissionsArePreservedTest() throws Exception {
+        Path file = tempDir.resolve("features.xml");
+        String latin1 = "<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>\r\n<features>\r\n<feature name=\"caf\u00e9\">\r\n"
+                + "<bundle>wrap:mvn:org.kie/kie-api/8.44.0.Final$Bundle-Name=Caf\u00e9</bundle>  \r\n</feature>\r\n</features>";
+        Files.write(file, latin1.getBytes(StandardCharsets.ISO_8859_1));
+        boolean posix = Files.getFileAttributeView(file, PosixFileAttributeView.class) != null;
+        if (posix) {
+            Files.setPosixFilePermissions(file, PosixFilePermissions.fromString("rw-r--r--"));
+        }
+
+        RewriteResult result = newRewriter().rewrite(file, Arrays.asList("caf\u00e9"));
+        assertTrue(result.written);
+        assertEquals(Files.size(file), result.bytesWritten);
+        assertEquals(latin1.replace("Caf\u00e9</bundle>", "Caf\u00e9&amp;Bundle-Version=8.44.0.Final</bundle>"),
+                new String(Files.readAllBytes(file), StandardCharsets.ISO_8859_1));
+        if (posix) {
+            assertEquals("rw-r--r--", PosixFilePermissions.toString(Files.getPosixFilePermissions(file)));
+        }
+    }
+
+    @Test
+    void bundleShapesTest() throws Exception {
+        Path file = tempDir.resolve("features.xml");
+        String shapes = String.join("\n",
+                "<features name=\"test\">",
+                "    <feature name=\"shapes\" version=\"1\">",
+                "        <bundle dependency=\"true\"",
+                "                start-level=\"80\">wrap:mvn:org.kie/kie-api/8.44.0.Final</bundle>",
+                "        <bundle>",
+                "            wrap:mvn:org.apache.olingo/odata-server-core/5.0.0$overwrite=merge  ",
+                "        </bundle>",
+                "        <bundle><![CDATA[wrap:mvn:com.google.guava/guava/33.2.0-jre$overwrite=merge&Export-Package=*]]></bundle>",
+                "        <bundle>",
+                "            <![CDATA[wrap:mvn:io.grpc/grpc-core/${grpc-version}$overwrite=merge]]>",
+                "        </bundle>",
+                "        <conditional>",
+                "            <condition>shell</condition>",
+                "            <bundle>wrap:mvn:org.apache.olingo/odata-server-api/5.0.0</bundle>",
+                "        </conditional>",
+                "        <bundle>wrap:file:${settings.localRepository}/org/jolokia/jolokia-jvm/1.7.2/jolokia-jvm-1.7.2-agent.jar$overwrite=merge</bundle>",
+                "        <bundle>wrap:https://repo1.maven.org/maven2/junit/junit/4.13.2/junit-4.13.2.jar</bundle>",
+                "        <bundle>wrap:file:/opt/libs/legacy.jar</bundle>",
+                "    </feature>",
+                "</features>",
+                "");
+        Files.write(file, shapes.getBytes(StandardCharsets.UTF_8));
+
+        RewriteResult verified = newRewriter().verify(file, Arrays.asList("shapes"), null);
+        assertEquals(20, verified.linesScanned);
+        assertEquals(7, verified.edits.size());
+        assertEquals(4, verified.edits.get(0).lineNumber);
+        assertEquals(6, verified.edits.get(1).lineNumber);
+        assertEquals(10, verified.edits.get(3).lineNumber);
+
+        RewriteResult result = newRewriter().rewrite(file, Arrays.asList("shapes"));
+        assertEquals(20, result.linesScanned);
+        assertEquals(8, result.wrapBundles);
+        // the version of the last url can't be derived
+        assertEquals(1, result.invalidVersions);
+        assertEquals(Files.size(file), result.bytesWritten);
+        String[] lines = new String(Files.readAllBytes(file), StandardCharsets.UTF_8).split("\n");
+        assertEquals("        <bundle dependency=\"true\"", lines[2]);
+        assertEquals("                start-level=\"80\">wrap:mvn:org.kie/kie-api/8.44.0.Final$Bundle-Version=8.44.0.Final</bundle>", lines[3]);
+        assertEquals("            wrap:mvn:org.apache.olingo/odata-server-core/5.0.0$overwrite=merge&amp;Bundle-Version=5.0.0  ", lines[5]);
+        assertEquals("        <bundle><![CDATA[wrap:mvn:com.google.guava/guava/33.2.0-jre$overwrite=merge&Bundle-Version=33.2.0.jre&Export-Package=*]]></bundle>", lines[7]);
+        assertEquals("            <![CDATA[wrap:mvn:io.grpc/grpc-core/${grpc-version}$overwrite=merge&Bundle-Version=${grpc-version}]]>", lines[9]);
+        assertEquals("            <bundle>wrap:mvn:org.apache.olingo/odata-server-api/5.0.0$Bundle-Version=5.0.0</bundle>", lines[13]);
+        assertEquals("        <bundle>wrap:file:${settings.localRepository}/org/jolokia/jolokia-jvm/1.7.2/jolokia-jvm-1.7.2-agent.jar$overwrite=merge&amp;Bundle-Version=1.7.2</bundle>", lines[15]);
+        assertEquals("        <bundle>wrap:https://repo1.maven.org/maven2/junit/junit/4.13.2/junit-4.13.2.jar$Bundle-Version=4.13.2</bundle>", lines[16]);
+        assertEquals("        <bundle>wrap:file:/opt/libs/legacy.jar</bundle>", lines[17]);
+        assertEquals(shapes.split("\n").length, lines.length);
+    }
+
+    @Test
+    void unclosedBundleTest() throws Exception {
+        Path file = tempDir.resolve("features.xml");
+        String features = String.join("\n",
+                "<features name=\"test\">",
+                "    <feature name=\"unclosed\" version=\"1\">",
+                "        <bundle dependency=\"true\">wrap:mvn:org.kie/kie-api/8.44.0.Final",
+                "        <bundle>wrap:mvn:org.apache.olingo/odata-server-core/5.0.0</bundle>",
+                "        <bundle>",
+                "            wrap:mvn:org.apache.olingo/odata-server-api/5.0.0",
+                "    </feature>",
+                "    <feature name=\"next\" version=\"1\">",
+                "        <bundle>wrap:mvn:com.google.guava/guava/33.2.0-jre</bundle>",
+                "    </feature>",
+                "</features>",
+                "");
+        Files.write(file, features.getBytes(StandardCharsets.UTF_8));
+
+        // the elements missing their end tag don't swallow the lines of the next ones
+        RewriteResult result = newRewriter().verify(file, null, null);
+        assertEquals(11, result.linesScanned);
+        assertEquals(4, result.edits.size());
+        assertEquals(3, result.edits.get(0).lineNumber);
+        assertEquals(4, result.edits.get(1).lineNumber);
+        assertEquals(6, result.edits.get(2).lineNumber);
+        assertEquals(9, result.edits.get(3).lineNumber);
+        assertEquals("        <bundle>wrap:mvn:org.apache.olingo/odata-server-core/5.0.0$Bundle-Version=5.0.0</bundle>", result.edits.get(1).newLine);
+    }
+
+    @Test
+    void commentedBundlesTest() throws Exception {
+        Path file = tempDir.resolve("features.xml");
+        String features = String.join("\n",
+                "<features name=\"test\">",
+                "    <feature name=\"commented\" version=\"1\">",
+                "        <!-- <bundle>wrap:mvn:org.kie/kie-api/8.43.0.Final -->",
+                "        <bundle>wrap:mvn:org.kie/kie-api/8.44.0.Final</bundle>",
+                "        <!--",
+                "        <bundle start-level=\"80\"",
+                "        -->",
+                "        <bundle>wrap:mvn:org.apache.olingo/odata-server-core/5.0.0</bundle>",
+                "        <bundle><!-- </bundle> -->",
+                "            wrap:mvn:org.apache.olingo/odata-server-api/5.0.0",
+                "        </bundle>",
+                "    </feature>",
+                "</features>",
+                "");
+        Files.write(file, features.getBytes(StandardCharsets.UTF_8));
+
+        // the start tags in comments don't make the next bundles part of their element
+        RewriteResult result = newRewriter().verify(file, null, null);
+        assertEquals(13, result.linesScanned);
+        assertEquals(4, result.edits.size());
+        assertEquals(3, result.edits.get(0).lineNumber);
+        assertEquals(4, result.edits.get(1).lineNumber);
+        assertEquals(8, result.edits.get(2).lineNumber);
+        assertEquals(10, result.edits.get(3).lineNumber);
+        assertEquals("        <bundle>wrap:mvn:org.kie/kie-api/8.44.0.Final$Bundle-Version=8.44.0.Final</bundle>", result.edits.get(1).newLine);
+    }
+
+    @Test
+    void verifyDoesNotWriteTest() throws Exception {
+        Path file = tempDir.resolve("features.xml");
+        Files.write(file, FEATURES.getBytes(StandardCharsets.UTF_8));
+        FileTime lastModified = FileTime.fromMillis(0);
+        Files.setLastModifiedTime(file, lastModified);
+
+        RewriteResult result = newRewriter().verify(file, null, null);
+        assertEquals(6, result.edits.size());
+        assertEquals(3, result.edits.get(0).lineNumber);
+        assertEquals("        <bundle>wrap:mvn:org.kie/kie-api/8.44.0.Final</bundle>", result.edits.get(0).oldLine);
+        assertEquals("        <bundle>wrap:mvn:org.kie/kie-api/8.44.0.Final$Bundle-Version=8.44.0.Final</bundle>", result.edits.get(0).newLine);
+        assertEquals(13, result.linesScanned);
+        assertEquals(0, result.bytesWritten);
+        assertFalse(result.written);
+        assertEquals(FEATURES, new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+        assertEquals(lastModified, Files.getLastModifiedTime(file));
+    }
+
+    @Test
+    void verifyStopsAtFirstViolationTest() throws Exception {
+        Path file = tempDir.resolve("features.xml");
+        Files.write(file, FEATURES.getBytes(StandardCharsets.UTF_8));
+
+        AtomicBoolean stop = new AtomicBoolean();
+        RewriteResult result = newRewriter().verify(file, null, stop);
+        assertTrue(stop.get());
+        assertEquals(1, result.edits.size());
+        assertEquals(3, result.linesScanned);
+
+        // another file sharing the flag isn't scanned at all
+        RewriteResult other = newRewriter().verify(file, null, stop);
+        assertEquals(0, other.linesScanned);
+    }
+
+    @Test
+    void rewriteSharedModelTest() throws Exception {
+        Path file = tempDir.resolve("features.xml");
+        Files.write(file, FEATURES.getBytes(StandardCharsets.UTF_8));
+        FeaturesModel model = FeaturesFileRewriter.parse(file, Arrays.asList("camel-google-mail"), null);
+        assertEquals(5, model.elements.size());
+        assertEquals(7, model.elements.get(0).lineNumber);
+
+        // two distributions sharing the parsed file and the validated versions
+        VersionNormalizer versionNormalizer = new VersionNormalizer();
+        Properties projectProperties = new Properties();
+        projectProperties.setProperty("grpc-version", "1.62.2");
+        String[] grpcVersions = { "1.62.2", "1.63.0" };
+        for (String grpcVersion : grpcVersions) {
+            Properties properties = new Properties();
+            properties.setProperty("grpc-version", grpcVersion);
+            WrapBundleVersionRewriter wrapRewriter = new WrapBundleVersionRewriter(new SystemStreamLog(), new PropertyResolver(properties),
+                    versionNormalizer, VersionRepairs.CLEAN_ONLY, null, FailurePolicy.WARN, false, Collections.emptyList());
+            wrapRewriter.resolveUrlPlaceholders(new PropertyResolver(projectProperties));
+            FeaturesFileRewriter rewriter = new FeaturesFileRewriter(wrapRewriter);
+            Path target = tempDir.resolve(grpcVersion).resolve("features.xml");
+
+            RewriteResult result = rewriter.rewrite(model, target);
+            assertTrue(result.written);
+            assertEquals(13, result.linesScanned);
+            assertEquals(5, result.edits.size());
+            assertEquals(Files.size(target), result.bytesWritten);
+            String[] lines = new String(Files.readAllBytes(target), StandardCharsets.UTF_8).split("\n");
+            assertEquals("        <bundle>wrap:mvn:org.kie/kie-api/8.44.0.Final</bundle>", lines[2]);
+            // the url keeps the placeholder only if it resolves to the same version
+            String urlVersion = grpcVersion.equals("1.62.2") ? "${grpc-version}" : grpcVersion;
+            assertEquals("        <bundle dependency='true'>wrap:mvn:io.grpc/grpc-core/" + urlVersion + "$${spi-provider}&amp;Bundle-Version=" + grpcVersion + "</bundle>", lines[9]);
+
+            FileTime lastModified = FileTime.fromMillis(0);
+            Files.setLastModifiedTime(target, lastModified);
+            assertFalse(rewriter.rewrite(model, target).written);
+            assertEquals(lastModified, Files.getLastModifiedTime(target));
+        }
+        assertEquals(FEATURES, new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,110 @@
+package feature.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class FeaturesIndexTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void featureRangesTest() throws Exception {
+        String features = String.join("\n",
+                "<?xml version=\"1.0\" encoding=\"UTF-8\"?>",
+                "<features name=\"test\" xmlns=\"http://karaf.apache.org/xmlns/features/v1.6.0\">",
+                "    <feature name=\"camel-google\" version=\"1.0\">",
+                "        <feature>camel-core</feature>",
+                "        <bundle>wrap:mvn:org.kie/kie-api/8.44.0.Final</bundle>",
+                "    </feature>",
+                "    <!-- comment -->",
+                "    <feature name=\"camel-google-mail\"><bundle>mvn:a/b/1</bundle></feature>",
+                "    <feature name=\"caf\u00e9\"><bundle>mvn:a/b/1</bundle></feature>",
+                "</features>",
+                "");
+        Path file = tempDir.resolve("features.xml");
+        Files.write(file, features.getBytes(StandardCharsets.UTF_8));
+        byte[] bytes = Files.readAllBytes(file);
+
+        FeaturesIndex index = FeaturesIndex.build(file);
+        assertEquals(3, index.names().size());
+        assertTrue(index.get("camel-core").isEmpty());
+
+        FeaturesIndex.Range google = index.get("camel-google").get(0);
+        assertEquals("\n        <feature>camel-core</feature>\n        <bundle>wrap:mvn:org.kie/kie-api/8.44.0.Final</bundle>\n    </feature>",
+                new String(bytes, (int) google.start, (int) (google.end - google.start), StandardCharsets.UTF_8));
+
+        FeaturesIndex.Range mail = index.get("camel-google-mail").get(0);
+        assertEquals("<bundle>mvn:a/b/1</bundle></feature>", new String(bytes, (int) mail.start, (int) (mail.end - mail.start), StandardCharsets.UTF_8));
+
+        FeaturesIndex.Range cafe = index.get("caf\u00e9").get(0);
+        assertEquals("<bundle>mvn:a/b/1</bundle></feature>", new String(bytes, (int) cafe.start, (int) (cafe.end - cafe.start), StandardCharsets.UTF_8));
+
+        List<String> missing = new ArrayList<>();
+        assertEquals(Arrays.asList(google, mail), index.select(Arrays.asList("camel-google*", "camel-google", "camel-aws"), missing));
+        assertEquals(Arrays.asList("camel-aws"), missing);
+    }
+
+    @Test
+    void largeFileTest() throws Exception {
+        StringBuilder features = new StringBuilder("<features name=\"test\">\n");
+        for (int i = 0; i < 2000; i++) {
+            features.append("    <feature name=\"feature-").append(i).append("\" version=\"1.0\">\n")
+                    .append("        <bundle>wrap:mvn:org.example/artifact-").append(i).append("/1.0.0</bundle>\n")
+                    .append("    </feature>\n");
+        }
+        features.append("</features>\n");
+        Path file = tempDir.resolve("features.xml");
+        Files.write(file, features.toString().getBytes(StandardCharsets.UTF_8));
+        byte[] bytes = Files.readAllBytes(file);
+
+        FeaturesIndex index = FeaturesIndex.build(file);
+        assertEquals(2000, index.names().size());
+        FeaturesIndex.Range range = index.get("feature-1500").get(0);
+        assertEquals("\n        <bundle>wrap:mvn:org.example/artifact-1500/1.0.0</bundle>\n    </feature>",
+                new String(bytes, (int) range.start, (int) (range.end - range.start), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void compactLayoutTest() throws Exception {
+        String features = String.join("\n",
+                "<features name=\"test\"><feature name=\"a\"><bundle>wrap:mvn:g/a/1.0</bundle></feature>",
+                "<feature name=\"b\"><bundle>wrap:mvn:g/b/1.0</bundle></feature><feature name=\"c\"/><!-- <feature name=\"d\"> -->",
+                "<feature name='e' description=\"a > b\"><![CDATA[</feature>]]><feature>a</feature></feature></features>",
+                "");
+        Path file = tempDir.resolve("features.xml");
+        Files.write(file, features.getBytes(StandardCharsets.UTF_8));
+        byte[] bytes = Files.readAllBytes(file);
+
+        // tags and terminators running past the end of the buffer
+        for (int bufferSize = 1; bufferSize <= 32; bufferSize++) {
+            FeaturesIndex index = FeaturesIndex.build(file, bufferSize);
+            assertEquals(new HashSet<>(Arrays.asList("a", "b", "c", "e")), index.names());
+            assertEquals("<bundle>wrap:mvn:g/a/1.0</bundle></feature>", text(bytes, index.get("a").get(0)));
+            assertEquals("<bundle>wrap:mvn:g/b/1.0</bundle></feature>", text(bytes, index.get("b").get(0)));
+            assertEquals("<feature name=\"c\"/>", text(bytes, index.get("c").get(0)));
+            assertEquals("<![CDATA[</feature>]]><feature>a</feature></feature>", text(bytes, index.get("e").get(0)));
+        }
+
+        FeaturesIndex index = FeaturesIndex.build(file);
+
+        List<String> missing = new ArrayList<>();
+        assertEquals(Arrays.asList(index.get("b").get(0), index.get("c").get(0)), index.select(Arrays.asList("b", "c", "d"), missing));
+        assertEquals(Arrays.asList("d"), missing);
+    }
+
+    private static String text(byte[] bytes, FeaturesIndex.Range range) {
+        return new String(bytes, (int) range.start, (int) (range.end - range.start), StandardCharsets.UTF_8);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,39 @@
+package feature.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class FeaturesSnapshotTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void changedFeaturesTest() throws Exception {
+        Path file = tempDir.resolve("features.xml");
+        write(file, "<features>\n<feature name=\"a\">\n  <bundle>wrap:mvn:g/a/1</bundle>\n</feature>\n"
+                + "<feature name=\"b\">\n  <bundle>wrap:mvn:g/b/1</bundle>\n</feature>\n</features>\n");
+        FeaturesSnapshot first = FeaturesSnapshot.take(file, null);
+        assertEquals("[a, b]", first.changedFeatures(null).toString());
+
+        // an edit of b moves nothing in a, an edit outside the features changes none
+        write(file, "<features>\n<!-- edited -->\n<feature name=\"a\">\n  <bundle>wrap:mvn:g/a/1</bundle>\n</feature>\n"
+                + "<feature name=\"b\">\n  <bundle>wrap:mvn:g/b/2</bundle>\n</feature>\n"
+                + "<feature name=\"c\">\n</feature>\n</features>\n");
+        FeaturesSnapshot second = FeaturesSnapshot.take(file, null);
+        assertNotEquals(first.contentHash, second.contentHash);
+        assertEquals("[b, c]", second.changedFeatures(first).toString());
+        assertEquals("[]", FeaturesSnapshot.take(file, null).changedFeatures(second).toString());
+    }
+
+    private static void write(Path file, String content) throws Exception {
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,85 @@
+package feature.utils;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import feature.utils.ArtifactResolutionStage.FailurePolicy;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class IncrementalStateTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void upToDateTest() throws Exception {
+        Path file = tempDir.resolve("features.xml");
+        Files.write(file, "<bundle>wrap:mvn:io.grpc/grpc-core/${grpc-version}</bundle>".getBytes(StandardCharsets.UTF_8));
+        Properties properties = new Properties();
+        properties.setProperty("grpc-version", "1.62.2");
+        properties.setProperty("camel-version", "4.4.0");
+
+        Path stateFile = tempDir.resolve("target/state.properties");
+        IncrementalState state = new IncrementalState(stateFile);
+        assertFalse(state.isUpToDate(file, null, new PropertyResolver(properties)));
+
+        RewriteResult result = new RewriteResult(file);
+        result.contentHash = IncrementalState.hashContent(file);
+        result.resolvedProperties.add("grpc-version");
+        state.update(result, null, new PropertyResolver(properties));
+        state.save();
+
+        state = new IncrementalState(stateFile);
+        assertTrue(state.isUpToDate(file, null, new PropertyResolver(properties)));
+        assertFalse(state.isUpToDate(file, "camel-google-mail", new PropertyResolver(properties)));
+
+        // properties that aren't used by the file don't matter
+        properties.setProperty("camel-version", "4.5.0");
+        assertTrue(state.isUpToDate(file, null, new PropertyResolver(properties)));
+
+        properties.setProperty("grpc-version", "1.63.0");
+        assertFalse(state.isUpToDate(file, null, new PropertyResolver(properties)));
+
+        // nested properties are hashed through their interpolated value
+        properties.setProperty("grpc-version", "${grpc-major}.62.2");
+        properties.setProperty("grpc-major", "1");
+        assertTrue(state.isUpToDate(file, null, new PropertyResolver(properties)));
+        properties.setProperty("grpc-major", "2");
+        assertFalse(state.isUpToDate(file, null, new PropertyResolver(properties)));
+
+        properties.setProperty("grpc-version", "1.62.2");
+        Files.write(file, "<bundle>wrap:mvn:io.grpc/grpc-api/${grpc-version}</bundle>".getBytes(StandardCharsets.UTF_8));
+        assertFalse(state.isUpToDate(file, null, new PropertyResolver(properties)));
+    }
+
+    @Test
+    void configurationTest() throws Exception {
+        Path file = tempDir.resolve("features.xml");
+        Files.write(file, "<bundle>wrap:mvn:io.grpc/grpc-core/1.62.2</bundle>".getBytes(StandardCharsets.UTF_8));
+        PropertyResolver properties = new PropertyResolver(new Properties());
+        List<WrapRule> rules = Arrays.asList(new WrapRule(WrapRule.Action.SET, "Export-Package", "*", "io.grpc:*"));
+        String configuration = IncrementalState.configuration("1.0", null, true, false, FailurePolicy.WARN, Arrays.asList("rules", "clean"), null, rules);
+
+        IncrementalState state = new IncrementalState(tempDir.resolve("state.properties"));
+        RewriteResult result = new RewriteResult(file);
+        result.contentHash = IncrementalState.hashContent(file);
+        state.update(result, configuration, properties);
+        assertTrue(state.isUpToDate(file, IncrementalState.configuration("1.0", null, true, false, FailurePolicy.WARN,
+                Arrays.asList("rules", "clean"), null, Arrays.asList(new WrapRule(WrapRule.Action.SET, "Export-Package", "*", "io.grpc:*"))), properties));
+
+        // a changed rule, parameter or plugin version rewrites the file
+        List<WrapRule> changedRules = Arrays.asList(new WrapRule(WrapRule.Action.SET, "Export-Package", "io.grpc.*", "io.grpc:*"));
+        assertFalse(state.isUpToDate(file, IncrementalState.configuration("1.0", null, true, false, FailurePolicy.WARN, Arrays.asList("rules", "clean"), null, changedRules), properties));
+        assertFalse(state.isUpToDate(file, IncrementalState.configuration("1.0", null, false, false, FailurePolicy.WARN, Arrays.asList("rules", "clean"), null, rules), properties));
+        assertFalse(state.isUpToDate(file, IncrementalState.configuration("1.1", null, true, false, FailurePolicy.WARN, Arrays.asList("rules", "clean"), null, rules), properties));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,35 @@
+package feature.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class LineReaderTest {
+
+    @Test
+    void linesAcrossBufferBoundariesTest() throws Exception {
+        String content = "<features>\r\n" + "<bundle>wrap:mvn:org.kie/kie-api/8.44.0.Final</bundle>\n\n" + "x\n" + "</features>";
+        // lines running past the end of the buffer and longer than it
+        for (int bufferSize = 1; bufferSize <= 16; bufferSize++) {
+            LineReader reader = new LineReader(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)), bufferSize);
+            List<String> lines = new ArrayList<>();
+            List<String> contents = new ArrayList<>();
+            long offset = 0;
+            while (reader.next()) {
+                assertEquals(offset, reader.offset());
+                offset += reader.length();
+                lines.add(new String(reader.bytes(), reader.start(), reader.length(), StandardCharsets.UTF_8));
+                contents.add(new String(reader.bytes(), reader.start(), reader.contentLength(), StandardCharsets.UTF_8));
+            }
+            assertFalse(reader.next());
+            assertEquals(content, String.join("", lines));
+            assertEquals("[<features>, <bundle>wrap:mvn:org.kie/kie-api/8.44.0.Final</bundle>, , x, </features>]", contents.toString());
+        }
+    }
+}
\ No newline at end of file
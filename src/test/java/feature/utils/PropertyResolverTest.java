@@ -0,0 +1,76 @@
+package feature.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.Collections;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+
+import feature.utils.ArtifactResolutionStage.FailurePolicy;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.jupiter.api.Test;
+
+public class PropertyResolverTest {
+
+    @Test
+    void interpolationTest() {
+        Properties properties = new Properties();
+        properties.setProperty("grpc-version", "${grpc-major}.${grpc-minor}.2");
+        properties.setProperty("grpc-major", "1");
+        properties.setProperty("grpc-minor", "${grpc-minor-base}");
+        properties.setProperty("grpc-minor-base", "62");
+        properties.setProperty("a", "${b}");
+        properties.setProperty("b", "${c}");
+        properties.setProperty("c", "${a}");
+        properties.setProperty("broken", "${undefined}.1");
+        properties.setProperty("unterminated", "1.${oops");
+        PropertyResolver resolver = new PropertyResolver(properties);
+
+        assertEquals("1.62.2", resolver.resolve("grpc-version"));
+        assertEquals("1.${oops", resolver.resolve("unterminated"));
+        assertNull(resolver.resolve("a"));
+        assertNull(resolver.resolve("broken"));
+        assertNull(resolver.resolve("undefined"));
+        assertEquals("property <undefined> is not defined", resolver.problem("${broken}"));
+        assertEquals("property <a> references itself through a -> b -> c -> a", resolver.problems().get("a"));
+
+        Set<String> names = new TreeSet<>();
+        assertEquals("1.62.3-SNAPSHOT", resolver.interpolate("${grpc-major}.${grpc-minor}.3-SNAPSHOT", names));
+        assertEquals("[grpc-major, grpc-minor]", names.toString());
+        assertNull(resolver.interpolate("${grpc-version}.${b}", null));
+        assertNull(resolver.problem("${grpc-version}"));
+    }
+
+    @Test
+    void rewritePlaceholdersTest() {
+        Properties properties = new Properties();
+        properties.setProperty("grpc-version", "${grpc-major}.62.2");
+        properties.setProperty("grpc-major", "1");
+        PropertyResolver resolver = new PropertyResolver(properties);
+        WrapBundleVersionRewriter preserving = new WrapBundleVersionRewriter(new SystemStreamLog(), resolver, new VersionNormalizer(), VersionRepairs.CLEAN_ONLY, null, FailurePolicy.WARN, true, Collections.emptyList());
+        WrapBundleVersionRewriter resolving = new WrapBundleVersionRewriter(new SystemStreamLog(), resolver, new VersionNormalizer(), VersionRepairs.CLEAN_ONLY, null, FailurePolicy.WARN, false, Collections.emptyList());
+
+        String composite = "<bundle>wrap:mvn:io.grpc/grpc-core/${grpc-major}.62.2</bundle>";
+        RewriteResult result = new RewriteResult(null);
+        assertEquals("<bundle>wrap:mvn:io.grpc/grpc-core/${grpc-major}.62.2$Bundle-Version=${grpc-major}.62.2</bundle>", preserving.rewrite(composite, result));
+        assertEquals("[grpc-major]", result.resolvedProperties.toString());
+        assertEquals("<bundle>wrap:mvn:io.grpc/grpc-core/${grpc-major}.62.2$Bundle-Version=1.62.2</bundle>", resolving.rewrite(composite, new RewriteResult(null)));
+
+        // a header already resolving to the version is left alone
+        String resolved = "<bundle>wrap:mvn:io.grpc/grpc-core/1.62.2$Bundle-Version=${grpc-version}</bundle>";
+        result = new RewriteResult(null);
+        assertEquals(resolved, preserving.rewrite(resolved, result));
+        assertEquals(1, result.headersUnchanged);
+        // the kept header depends on the properties it references
+        assertEquals("[grpc-version]", result.resolvedProperties.toString());
+        assertEquals("<bundle>wrap:mvn:io.grpc/grpc-core/1.62.2$Bundle-Version=1.62.2</bundle>", resolving.rewrite(resolved, new RewriteResult(null)));
+
+        String unresolved = "<bundle>wrap:mvn:io.grpc/grpc-core/${grpc-version}.${grpc-patch}</bundle>";
+        result = new RewriteResult(null);
+        assertEquals(unresolved, preserving.rewrite(unresolved, result));
+        assertEquals(1, result.placeholdersUnresolved);
+    }
+}
\ No newline at end of file
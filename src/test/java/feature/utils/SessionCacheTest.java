@@ -0,0 +1,63 @@
+package feature.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.maven.repository.internal.MavenRepositorySystemUtils;
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class SessionCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void sharedAcrossExecutionsTest() throws Exception {
+        DefaultRepositorySystemSession session = MavenRepositorySystemUtils.newSession();
+        SessionCache cache = SessionCache.of(session);
+        assertSame(cache, SessionCache.of(session));
+        assertNotSame(cache, SessionCache.of(MavenRepositorySystemUtils.newSession()));
+
+        assertSame(cache.pattern("camel-*"), cache.pattern("camel-*"));
+
+        // modules with the same properties share the interpolated table, each adds its project.* values
+        Map<String, String> shared = new HashMap<>();
+        shared.put("grpc-version", "${grpc-major}.62.2");
+        shared.put("grpc-major", "1");
+        PropertyResolver table = cache.propertyTable(shared);
+        assertSame(table, cache.propertyTable(new HashMap<>(shared)));
+        Map<String, String> module = new HashMap<>();
+        module.put("project.version", "4.4.0");
+        module.put("project.name", "camel ${grpc-version}");
+        PropertyResolver resolver = new PropertyResolver(table, module);
+        assertEquals("camel 1.62.2", resolver.resolve("project.name"));
+        assertEquals("1.62.2", resolver.interpolate("${grpc-version}", null));
+        assertEquals("property <undefined> is not defined", resolver.problem("${project.version}.${undefined}"));
+
+        Path file = tempDir.resolve("features.xml");
+        Files.write(file, "<features>\n<feature name=\"a\">\n</feature>\n</features>".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(file, FileTime.fromMillis(1000));
+        FeaturesIndex index = cache.index(file);
+        assertSame(index, cache.index(file));
+        Files.write(file, "<features>\n<feature name=\"b\">\n</feature>\n</features>".getBytes(StandardCharsets.UTF_8));
+        assertEquals("[b]", cache.index(file).names().toString());
+        // the index of the previous content is replaced, not kept along
+        assertEquals(1, cache.indexCount());
+
+        cache.versionNormalizer().normalize("33.2.0-jre");
+        cache.versionNormalizer().normalize("33.2.0-jre");
+        assertEquals("feature-utils build cache: patterns 1 hits/1 misses, property tables 1 hits/1 misses, "
+                + "features indexes 1 hits/2 misses, manifest caches 0 hits/0 misses, manifests 0 hits/0 misses, "
+                + "versions 1 hits/1 misses", cache.summary());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,59 @@
+package feature.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class UnifiedDiffTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void hunksTest() throws Exception {
+        Path file = tempDir.resolve("features.xml");
+        StringBuilder content = new StringBuilder();
+        for (int i = 1; i <= 20; i++) {
+            content.append("line").append(i).append(i == 20 ? "" : "\n");
+        }
+        Files.write(file, content.toString().getBytes(StandardCharsets.UTF_8));
+
+        StringBuilder patch = new StringBuilder();
+        UnifiedDiff.write(patch, "src/features.xml", file, Arrays.asList(
+                new LineEdit(2, "line2", "LINE2"),
+                new LineEdit(7, "line7", "LINE7"),
+                new LineEdit(20, "line20", "LINE20")));
+        assertEquals(String.join("\n",
+                "--- a/src/features.xml",
+                "+++ b/src/features.xml",
+                // the context of lines 2 and 7 overlap
+                "@@ -1,10 +1,10 @@",
+                " line1",
+                "-line2",
+                "+LINE2",
+                " line3",
+                " line4",
+                " line5",
+                " line6",
+                "-line7",
+                "+LINE7",
+                " line8",
+                " line9",
+                " line10",
+                "@@ -17,4 +17,4 @@",
+                " line17",
+                " line18",
+                " line19",
+                "-line20",
+                "\\ No newline at end of file",
+                "+LINE20",
+                "\\ No newline at end of file",
+                ""), patch.toString());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,46 @@
+package feature.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.osgi.framework.Version;
+
+public class VersionNormalizerTest {
+
+    @Test
+    void isValidOsgiVersionTest() {
+        String[] versions = { "1", "1.2", "1.2.3", "1.2.3.Final", "8.44.0.Final", "1.2.3.v3-rev2024_01", "2147483647",
+                "", "1.", "1..2", "1.2.3.", "1.2.3.a.b", "33.2.0-jre", "-1", "1.2.3.a+b", "2147483648", "a.b.c", " 1.0", "1.0 " };
+        for (String version : versions) {
+            boolean valid;
+            try {
+                new Version(version);
+                valid = true;
+            } catch (IllegalArgumentException e) {
+                valid = false;
+            }
+            assertEquals(valid, VersionNormalizer.isValidOsgiVersion(version), version);
+        }
+    }
+
+    @Test
+    void normalizeTest() {
+        VersionNormalizer normalizer = new VersionNormalizer(1);
+
+        VersionNormalizer.NormalizedVersion guava = normalizer.normalize("33.2.0-jre");
+        assertTrue(guava.valid);
+        assertTrue(guava.cleaned);
+        assertEquals("33.2.0.jre", guava.version);
+        assertSame(guava, normalizer.normalize("33.2.0-jre"));
+
+        VersionNormalizer.NormalizedVersion olingo = normalizer.normalize("5.0.0");
+        assertTrue(olingo.valid);
+        assertFalse(olingo.cleaned);
+        assertEquals("5.0.0", olingo.version);
+        // the cache is full
+        assertEquals("5.0.0", normalizer.normalize("5.0.0").version);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,61 @@
+package feature.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import feature.utils.VersionNormalizer.NormalizedVersion;
+
+import org.junit.jupiter.api.Test;
+
+public class VersionRepairsTest {
+
+    private static final String REVISION = "v(\\d+)-rev(\\d+)-(\\d+)\\.(\\d+)\\.(\\d+)";
+
+    @Test
+    void rulesLookupTest() {
+        VersionRepairs repairs = new VersionRepairs(VersionRepairs.strategies(Collections.singletonList("rules, clean")), Arrays.asList(
+                new VersionRepair(null, "(\\d+)\\.(\\d+)\\.(\\d+)-jre", "$1.$2.$3.jre"),
+                new VersionRepair("com.google.*", REVISION, "$3.$4.$5.v$1"),
+                new VersionRepair("com.google.apis.*", REVISION, "$3.$4.$5.v$1-rev$2"),
+                new VersionRepair("com.google.apis:google-api-services-gmail", null, "2.0.0.gmail"),
+                new VersionRepair("com.google.apis:google-api-services-gmail:v1-rev1-2.0.0", null, "2.0.0.exact"),
+                // invalid OSGi version, the next rules are tried
+                new VersionRepair("org.kie:kie-api", null, "not valid")));
+        assertNull(new VersionRepair("com.google.*", REVISION, "$3").validate());
+
+        // the most specific rule wins: exact version, exact artifact, longest groupId prefix, any artifact
+        assertEquals("2.0.0.exact", repairs.applyRules("com.google.apis", "google-api-services-gmail", "v1-rev1-2.0.0"));
+        assertEquals("2.0.0.gmail", repairs.applyRules("com.google.apis", "google-api-services-gmail", "v3-rev20240123-2.0.0"));
+        assertEquals("2.0.0.v3-rev20240123", repairs.applyRules("com.google.apis", "google-api-services-drive", "v3-rev20240123-2.0.0"));
+        assertEquals("2.0.0.v3", repairs.applyRules("com.google.cloud", "google-cloud-pubsub", "v3-rev20240123-2.0.0"));
+        // prefixes match whole groupId segments
+        assertNull(repairs.applyRules("com.googlex", "a", "v3-rev20240123-2.0.0"));
+        assertEquals("33.2.0.jre", repairs.applyRules("com.google.guava", "guava", "33.2.0-jre"));
+        assertNull(repairs.applyRules("org.kie", "kie-api", "8.44"));
+        // cached by artifact
+        assertEquals("2.0.0.gmail", repairs.applyRules("com.google.apis", "google-api-services-gmail", "v3-rev20240123-2.0.0"));
+
+        // the clean function is the fallback of the chain
+        NormalizedVersion cleaned = new VersionNormalizer().normalize("v3-rev20240123-2.0.0");
+        assertEquals("0.0.0.v3-rev20240123-2_0_0", repairs.repair("org.acme", "acme", "v3-rev20240123-2.0.0", () -> null, cleaned).version);
+        NormalizedVersion repaired = repairs.repair("com.google.apis", "google-api-services-drive", "v3-rev20240123-2.0.0", () -> null, cleaned);
+        assertEquals("2.0.0.v3-rev20240123", repaired.version);
+        assertNotNull(repaired.repairedBy);
+
+        // without the clean function, versions no strategy repairs stay invalid
+        VersionRepairs manifestOnly = new VersionRepairs(VersionRepairs.strategies(Collections.singletonList("manifest")), Collections.emptyList());
+        assertEquals("2.0.0", manifestOnly.repair("org.acme", "acme", "v3-rev20240123-2.0.0",
+                () -> new ManifestInfo(null, null, "2.0.0"), cleaned).version);
+        assertFalse(manifestOnly.repair("org.acme", "acme", "v3-rev20240123-2.0.0", () -> null, cleaned).valid);
+
+        assertThrows(IllegalArgumentException.class, () -> VersionRepairs.strategies(Collections.singletonList("rules,guess")));
+        assertNotNull(new VersionRepair("com.google.*:guava", null, "1").validate());
+        assertNotNull(new VersionRepair(null, "(", "1").validate());
+    }
+}
\ No newline at end of file
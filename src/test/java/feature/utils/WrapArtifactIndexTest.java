@@ -0,0 +1,106 @@
+package feature.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class WrapArtifactIndexTest {
+
+    private static final String FEATURES = String.join("\n",
+            "<features name=\"test\">",
+            "    <feature name=\"a\">",
+            "        <bundle>wrap:mvn:io.grpc/grpc-core/${grpc-version}$Bundle-Version=${grpc-version}</bundle>",
+            "        <bundle>wrap:mvn:com.google.guava/guava/33.2.0-jre$Bundle-Version=33.2.0.jre</bundle>",
+            "        <bundle>wrap:mvn:com.google.guava/guava/33.2.0-jre</bundle>",
+            "    </feature>",
+            "    <feature name=\"b\">",
+            "        <bundle>wrap:mvn:io.grpc/grpc-core/1.60.0</bundle>",
+            "        <bundle>wrap:mvn:com.google.guava/guava/33.2.0-jre$Bundle-Version=33.2.0</bundle>",
+            "        <bundle>wrap:mvn:org.kie/kie-api/8.44.0.Final</bundle>",
+            "    </feature>",
+            "</features>",
+            "");
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void analyzeAndNormalizeTest() throws Exception {
+        Path file = tempDir.resolve("features.xml");
+        Files.write(file, FEATURES.getBytes(StandardCharsets.UTF_8));
+        Properties properties = new Properties();
+        properties.setProperty("grpc-version", "1.62.2");
+        WrapBundleVersionRewriter rewriter = new WrapBundleVersionRewriter(new SystemStreamLog(), properties);
+        FeaturesFileRewriter fileRewriter = new FeaturesFileRewriter(rewriter);
+
+        WrapArtifactIndex index = new WrapArtifactIndex(new PropertyResolver(properties));
+        fileRewriter.scanWrapLines(file, null, index::add);
+        assertEquals(6, index.wrapBundles());
+        assertEquals(3, index.artifacts().size());
+
+        Iterator<WrapArtifactIndex.Artifact> artifacts = index.artifacts().iterator();
+        WrapArtifactIndex.Artifact guava = artifacts.next();
+        assertEquals("com.google.guava:guava", guava.key);
+        assertFalse(guava.isSkewed());
+        assertEquals("[33.2.0-jre]", guava.conflicts().toString());
+        assertEquals("{33.2.0=[b], 33.2.0.jre=[a], <none>=[a]}", guava.bundleVersions.get("33.2.0-jre").toString());
+        assertEquals("[a]", guava.duplicates.toString());
+
+        WrapArtifactIndex.Artifact grpc = artifacts.next();
+        assertTrue(grpc.isSkewed());
+        assertEquals("{1.60.0=[b], 1.62.2=[a]}", grpc.versions.toString());
+        assertEquals("1.62.2", grpc.highestVersion());
+        assertTrue(grpc.conflicts().isEmpty());
+
+        WrapArtifactIndex.Artifact kie = artifacts.next();
+        assertFalse(kie.isSkewed() || !kie.conflicts().isEmpty() || !kie.duplicates.isEmpty());
+
+        // the indexes of files scanned concurrently are merged into the same one
+        WrapArtifactIndex merged = new WrapArtifactIndex(new PropertyResolver(properties));
+        WrapArtifactIndex featureA = new WrapArtifactIndex(new PropertyResolver(properties));
+        WrapArtifactIndex featureB = new WrapArtifactIndex(new PropertyResolver(properties));
+        fileRewriter.scanWrapLines(file, null, (feature, line) -> (feature.equals("a") ? featureA : featureB).add(feature, line));
+        merged.merge(featureB);
+        merged.merge(featureA);
+        StringWriter expected = new StringWriter();
+        index.writeJson(expected);
+        StringWriter actual = new StringWriter();
+        merged.writeJson(actual);
+        assertEquals(expected.toString(), actual.toString());
+        assertEquals(index.alignedVersions(), merged.alignedVersions());
+
+        // skewed artifacts are aligned on the declaration of their highest version
+        Map<String, String> aligned = new HashMap<>();
+        aligned.put("io.grpc:grpc-core", "${grpc-version}");
+        assertEquals(aligned, index.alignedVersions());
+
+        rewriter.alignVersions(index.alignedVersions());
+        RewriteResult result = fileRewriter.rewrite(file, null);
+        assertEquals(1, result.versionsAligned);
+        String normalized = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+        assertTrue(normalized.contains("wrap:mvn:io.grpc/grpc-core/${grpc-version}$Bundle-Version=${grpc-version}</bundle>\n"
+                + "        <bundle>wrap:mvn:com.google.guava/guava/33.2.0-jre$Bundle-Version=33.2.0.jre</bundle>"), normalized);
+        assertTrue(normalized.contains("<feature name=\"b\">\n        <bundle>wrap:mvn:io.grpc/grpc-core/${grpc-version}$Bundle-Version=${grpc-version}</bundle>\n"
+                + "        <bundle>wrap:mvn:com.google.guava/guava/33.2.0-jre$Bundle-Version=33.2.0.jre</bundle>"), normalized);
+
+        WrapArtifactIndex normalizedIndex = new WrapArtifactIndex(new PropertyResolver(properties));
+        fileRewriter.scanWrapLines(file, null, normalizedIndex::add);
+        for (WrapArtifactIndex.Artifact artifact : normalizedIndex.artifacts()) {
+            assertFalse(artifact.isSkewed());
+            assertTrue(artifact.conflicts().isEmpty());
+        }
+    }
+}
\ No newline at end of file
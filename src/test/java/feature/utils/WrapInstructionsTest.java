@@ -0,0 +1,67 @@
+package feature.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.Arrays;
+import java.util.Properties;
+
+import feature.utils.ArtifactResolutionStage.FailurePolicy;
+import feature.utils.WrapRule.Action;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.jupiter.api.Test;
+
+public class WrapInstructionsTest {
+
+    private static final String LINE = "<bundle>wrap:mvn:org.apache.olingo/odata-server-core/5.0.0$overwrite=merge&amp;${extra}&amp;"
+            + "Export-Package=org.apache.olingo.*;version=5.0.0</bundle>";
+
+    @Test
+    void editTest() {
+        WrapInstructions instructions = WrapInstructions.parse(WrapUrl.parse(LINE));
+        assertEquals("merge", instructions.get("overwrite"));
+        assertNull(instructions.get("Import-Package"));
+        assertSame(LINE, instructions.toLine());
+
+        // same value, nothing to write
+        instructions.set("overwrite", "merge");
+        assertSame(LINE, instructions.toLine());
+
+        instructions.set("Bundle-SymbolicName", "olingo");
+        instructions.set("Import-Package", "*");
+        instructions.remove("overwrite", "full");
+        instructions.replace("Require-Bundle", "x");
+        assertEquals("<bundle>wrap:mvn:org.apache.olingo/odata-server-core/5.0.0$overwrite=merge&amp;${extra}&amp;Bundle-SymbolicName=olingo&amp;"
+                + "Export-Package=org.apache.olingo.*;version=5.0.0&amp;Import-Package=*</bundle>", instructions.toLine());
+
+        instructions = WrapInstructions.parse(WrapUrl.parse("<bundle>wrap:mvn:org.kie/kie-api/8.44.0.Final$overwrite=merge</bundle>"));
+        instructions.remove("overwrite", null);
+        assertEquals("<bundle>wrap:mvn:org.kie/kie-api/8.44.0.Final</bundle>", instructions.toLine());
+    }
+
+    @Test
+    void rulesTest() {
+        WrapRule symbolicName = new WrapRule(Action.SET, "Bundle-SymbolicName", "{groupId}.{artifactId}", null);
+        WrapRule overwrite = new WrapRule(Action.REMOVE, "overwrite", "merge", null);
+        WrapRule exports = new WrapRule(Action.REPLACE, "Export-Package", "org.apache.olingo.*;version={version}", "org.apache.olingo:*");
+        assertNull(exports.validate());
+        assertNotNull(new WrapRule(Action.SET, "Import-Package", null, null).validate());
+
+        WrapBundleVersionRewriter rewriter = new WrapBundleVersionRewriter(new SystemStreamLog(), new PropertyResolver(new Properties()),
+                new VersionNormalizer(), VersionRepairs.CLEAN_ONLY, null, FailurePolicy.WARN, true, Arrays.asList(symbolicName, overwrite, exports));
+        RewriteResult result = new RewriteResult(null);
+        assertEquals("<bundle>wrap:mvn:org.apache.olingo/odata-server-core/5.0.1$${extra}&amp;Bundle-Version=5.0.1&amp;"
+                + "Bundle-SymbolicName=org.apache.olingo.odata-server-core&amp;Export-Package=org.apache.olingo.*;version=5.0.1</bundle>",
+                rewriter.rewrite(LINE.replace("core/5.0.0", "core/5.0.1"), result));
+        assertEquals(1, result.headersInserted);
+        assertEquals(3, result.ruleEdits);
+
+        // the artifact pattern doesn't match
+        assertEquals("<bundle>wrap:mvn:org.kie/kie-api/8.44.0.Final$Bundle-Version=8.44.0.Final&amp;Bundle-SymbolicName=org.kie.kie-api"
+                + "&amp;Export-Package=org.kie.*</bundle>",
+                rewriter.rewrite("<bundle>wrap:mvn:org.kie/kie-api/8.44.0.Final$overwrite=merge&amp;Export-Package=org.kie.*</bundle>", new RewriteResult(null)));
+    }
+}
\ No newline at end of file